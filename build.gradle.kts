@@ -2,6 +2,9 @@
 plugins {
     java
     application
+
+    // Benchmarks in src/jmh, run by "gradle jmh"
+    id("me.champeau.gradle.jmh") version "0.4.8"
 }
 
 java {
@@ -24,6 +27,9 @@ dependencies {
     // Guava primitives
     compile("com.google.guava:guava:27.0.1-jre")
 
+    // Latency percentiles of LoadDriver
+    compile("org.hdrhistogram:HdrHistogram:2.1.11")
+
     // JUnit Jupiter test framework
     testCompile("org.junit.jupiter:junit-jupiter-api:5.4.0")
     testRuntime("org.junit.jupiter:junit-jupiter-engine:5.4.0")
@@ -33,6 +39,14 @@ val run by tasks.getting(JavaExec::class) {
     standardInput = System.`in`
 }
 
+// YCSB-style workloads, e.g. gradle load -Pargs="--workload B --threads 4"
+val load by tasks.registering(JavaExec::class) {
+    classpath = sourceSets["main"].runtimeClasspath
+    main = "ru.mail.polis.LoadDriver"
+    maxHeapSize = "128m"
+    args = (findProperty("args") as String?)?.split(" ") ?: listOf()
+}
+
 tasks {
     test {
         maxHeapSize = "128m"
@@ -40,6 +54,13 @@ tasks {
     }
 }
 
+jmh {
+    jmhVersion = "1.21"
+
+    // DAOFactory refuses bigger heaps
+    jvmArgs = listOf("-Xmx128m")
+}
+
 application {
     // Define the main class for the application
     mainClassName = "ru.mail.polis.Client"
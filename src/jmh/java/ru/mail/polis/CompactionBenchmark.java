@@ -0,0 +1,51 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * Major compaction of SSTables which span the whole key range.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Measurement(iterations = 20)
+public class CompactionBenchmark extends DAOBenchmark {
+    @Param({"2", "4", "16"})
+    public int tables;
+
+    /**
+     * Write the tables and open the storage over them before every compaction.
+     * @throws IOException if write is failed
+     */
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        createDirectory();
+        populate(KEYS, tables);
+        dao = open();
+    }
+
+    /**
+     * Close the storage and remove its files after every compaction.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Merge all the tables into one.
+     * @throws IOException if compaction is failed
+     */
+    @Benchmark
+    public void compact() throws IOException {
+        dao.compact();
+    }
+}
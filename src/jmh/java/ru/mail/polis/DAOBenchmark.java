@@ -0,0 +1,114 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.FullCompactionStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Storage in a temporary directory shared by benchmarks of {@link DAO}, parameterised by key and value sizes.
+ */
+@State(Scope.Benchmark)
+public abstract class DAOBenchmark {
+    static final int KEYS = 10_000;
+    // The whole data set fits into a single MemTable, so every table is written by an explicit flush
+    static final long FLUSH_THRESHOLD = 32 * 1024 * 1024;
+
+    @Param({"16", "64"})
+    public int keySize;
+
+    @Param({"128", "1024"})
+    public int valueSize;
+
+    File data;
+    DAO dao;
+    private byte[] value;
+
+    void createDirectory() throws IOException {
+        data = java.nio.file.Files.createTempDirectory("dao-benchmark").toFile();
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+    }
+
+    void deleteDirectory() throws IOException {
+        if (dao != null) {
+            dao.close();
+            dao = null;
+        }
+        Files.recursiveDelete(data);
+    }
+
+    /**
+     * Tuning which keeps tables from being merged in the background.
+     * @return the config
+     */
+    @NotNull
+    static Config config() {
+        return Config.builder(FLUSH_THRESHOLD)
+                .compactionStrategy(new FullCompactionStrategy(Integer.MAX_VALUE))
+                .build();
+    }
+
+    DAO open() throws IOException {
+        return DAOFactory.create(data, config());
+    }
+
+    /**
+     * Write keys of even numbers from 0 to twice the count, so keys of odd numbers are absent within the range.
+     * Every key goes into one of the tables, so every table spans the whole range.
+     * @param count number of keys
+     * @param tables number of SSTables to write
+     * @throws IOException if write is failed
+     */
+    void populate(
+            final int count,
+            final int tables) throws IOException {
+        for (int table = 0; table < tables; table++) {
+            try (DAO writer = open()) {
+                for (int i = table; i < count; i += tables) {
+                    writer.upsert(key(i * 2L), value());
+                }
+            }
+        }
+    }
+
+    /**
+     * Key of given size whose order is the order of the number.
+     * @param i the number
+     * @return the key
+     */
+    @NotNull
+    ByteBuffer key(final long i) {
+        final String digits = Long.toString(i);
+        final byte[] result = new byte[keySize];
+        Arrays.fill(result, (byte) '0');
+        final byte[] bytes = digits.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, result, keySize - bytes.length, bytes.length);
+        return ByteBuffer.wrap(result);
+    }
+
+    /**
+     * Key of a random number less than the bound.
+     * @param bound the bound
+     * @return the key
+     */
+    @NotNull
+    ByteBuffer randomKey(final long bound) {
+        return key(ThreadLocalRandom.current().nextLong(bound));
+    }
+
+    @NotNull
+    ByteBuffer value() {
+        return ByteBuffer.wrap(value);
+    }
+}
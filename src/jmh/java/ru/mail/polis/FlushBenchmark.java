@@ -0,0 +1,50 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * Flush of a full MemTable into an SSTable, which happens on close of the storage.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Measurement(iterations = 20)
+public class FlushBenchmark extends DAOBenchmark {
+    /**
+     * Open an empty storage and fill its MemTable before every flush.
+     * @throws IOException if write is failed
+     */
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        createDirectory();
+        dao = open();
+        for (int i = 0; i < KEYS; i++) {
+            dao.upsert(randomKey(Integer.MAX_VALUE), value());
+        }
+    }
+
+    /**
+     * Remove the files of the storage after every flush.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Close the storage, which flushes its MemTable.
+     * @throws IOException if flush is failed
+     */
+    @Benchmark
+    public void flush() throws IOException {
+        dao.close();
+        dao = null;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Point lookups of present and absent keys over SSTables, every one of which spans the whole key range.
+ */
+public class GetBenchmark extends DAOBenchmark {
+    @Param({"1", "4", "16"})
+    public int tables;
+
+    /**
+     * Write the tables and open the storage over them.
+     * @throws IOException if write is failed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        createDirectory();
+        populate(KEYS, tables);
+        dao = open();
+    }
+
+    /**
+     * Close the storage and remove its files.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Look up a present key, which is found in one of the tables.
+     * @return the value
+     * @throws IOException if read is failed
+     */
+    @Benchmark
+    public ByteBuffer hit() throws IOException {
+        return dao.get(key(ThreadLocalRandom.current().nextInt(KEYS) * 2L));
+    }
+
+    /**
+     * Look up an absent key within bounds of every table, which is left to Bloom filters.
+     * @return null
+     * @throws IOException if read is failed
+     */
+    @Benchmark
+    public ByteBuffer miss() throws IOException {
+        try {
+            return dao.get(key(ThreadLocalRandom.current().nextInt(KEYS) * 2L + 1));
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Scans of ranges of given length from a random key in both directions.
+ */
+public class RangeBenchmark extends DAOBenchmark {
+    @Param({"1", "4"})
+    public int tables;
+
+    @Param({"1", "10", "100", "1000"})
+    public int length;
+
+    /**
+     * Write the tables and open the storage over them.
+     * @throws IOException if write is failed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        createDirectory();
+        populate(KEYS, tables);
+        dao = open();
+    }
+
+    /**
+     * Close the storage and remove its files.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Scan a range in ascending order.
+     * @param blackhole consumer of records
+     * @throws IOException if read is failed
+     */
+    @Benchmark
+    public void ascending(final Blackhole blackhole) throws IOException {
+        scan(false, blackhole);
+    }
+
+    /**
+     * Scan a range in descending order.
+     * @param blackhole consumer of records
+     * @throws IOException if read is failed
+     */
+    @Benchmark
+    public void descending(final Blackhole blackhole) throws IOException {
+        scan(true, blackhole);
+    }
+
+    private void scan(
+            final boolean descending,
+            final Blackhole blackhole) throws IOException {
+        // Stored keys are of even numbers
+        final long from = ThreadLocalRandom.current().nextInt(KEYS - length) * 2L;
+        final Iterator<Record> records = dao.range(key(from), key(from + length * 2L), descending);
+        while (records.hasNext()) {
+            blackhole.consume(records.next());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Opening of the storage with SSTables: the first open in a fresh JVM and repeated opens once the JVM is warmed up.
+ */
+public class StartupBenchmark extends DAOBenchmark {
+    @Param({"1", "16"})
+    public int tables;
+
+    /**
+     * Write the tables to open the storage over.
+     * @throws IOException if write is failed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        createDirectory();
+        populate(KEYS, tables);
+    }
+
+    /**
+     * Remove the files of the storage.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Open and close the storage once per JVM.
+     * @throws IOException if open is failed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public void cold() throws IOException {
+        open().close();
+    }
+
+    /**
+     * Open and close the storage in a warmed up JVM.
+     * @throws IOException if open is failed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void warm() throws IOException {
+        open().close();
+    }
+}
@@ -0,0 +1,53 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes of keys in ascending and in random order, which flush MemTables and compact tables along the way.
+ */
+public class UpsertBenchmark extends DAOBenchmark {
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Open an empty storage.
+     * @throws IOException if open is failed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        createDirectory();
+        dao = DAOFactory.create(data);
+    }
+
+    /**
+     * Close the storage and remove its files.
+     * @throws IOException if delete is failed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteDirectory();
+    }
+
+    /**
+     * Write a key greater than every key written before.
+     * @throws IOException if write is failed
+     */
+    @Benchmark
+    public void sequential() throws IOException {
+        dao.upsert(key(next.getAndIncrement()), value());
+    }
+
+    /**
+     * Write a random key.
+     * @throws IOException if write is failed
+     */
+    @Benchmark
+    public void random() throws IOException {
+        dao.upsert(randomKey(Integer.MAX_VALUE), value());
+    }
+}
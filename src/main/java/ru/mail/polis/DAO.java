@@ -22,7 +22,15 @@ import org.jetbrains.annotations.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -64,6 +72,27 @@ public interface DAO extends Closeable {
         return Iters.until(iterator(from), bound);
     }
 
+    /**
+     * Provides iterator (possibly empty) over {@link Record}s starting at "from" key (inclusive)
+     * until given "to" key (exclusive) in either <b>ascending</b> or <b>descending</b> order
+     * according to {@link Record#compareTo(Record)}.
+     * N.B. The default implementation reads the whole range before returning descending iterator.
+     */
+    @NotNull
+    default Iterator<Record> range(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to,
+            boolean descending) throws IOException {
+        final Iterator<Record> ascending = range(from, to);
+        if (!descending) {
+            return ascending;
+        }
+
+        final Deque<Record> records = new ArrayDeque<>();
+        ascending.forEachRemaining(records::push);
+        return records.iterator();
+    }
+
     /**
      * Obtains {@link Record} corresponding to given key.
      *
@@ -84,6 +113,28 @@ public interface DAO extends Closeable {
         }
     }
 
+    /**
+     * Obtains values of given keys, absent keys are omitted.
+     */
+    @NotNull
+    default Map<ByteBuffer, ByteBuffer> getAll(@NotNull Collection<ByteBuffer> keys) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> result = new HashMap<>();
+        for (final ByteBuffer key : keys) {
+            try {
+                result.put(key, get(key));
+            } catch (NoSuchElementException e) {
+                // Absent keys are omitted
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Takes a consistent read-only view of the storage, which must be closed after use.
+     */
+    @NotNull
+    Snapshot snapshot() throws IOException;
+
     /**
      * Inserts or updates value by given key.
      */
@@ -91,11 +142,58 @@ public interface DAO extends Closeable {
             @NotNull ByteBuffer key,
             @NotNull ByteBuffer value) throws IOException;
 
+    /**
+     * Inserts or updates value by given key, which expires after given time to live in milliseconds.
+     */
+    void upsert(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value,
+            long ttlMillis) throws IOException;
+
     /**
      * Removes value by given key.
      */
     void remove(@NotNull ByteBuffer key) throws IOException;
 
+    /**
+     * Removes every key from "from" key (inclusive) until given "to" key (exclusive),
+     * the range is unbounded if "to" is null.
+     * N.B. The default implementation removes keys of the range one by one.
+     */
+    default void removeRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        range(from, to).forEachRemaining(record -> keys.add(record.getKey()));
+        for (final ByteBuffer key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Applies upserts and removals of the batch in order.
+     * Implementations may apply the whole batch atomically.
+     */
+    default void apply(@NotNull WriteBatch batch) throws IOException {
+        for (final WriteBatch.Mutation mutation : batch.mutations()) {
+            final ByteBuffer value = mutation.getValue();
+            if (value == null) {
+                remove(mutation.getKey());
+            } else {
+                upsert(mutation.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * Returns counters, latencies and sizes of the storage by their names,
+     * empty if the implementation doesn't collect them.
+     */
+    @NotNull
+    default Map<String, Number> stats() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Perform compaction
      */
@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.IOException;
 
+import ru.mail.polis.murzin.Config;
 import ru.mail.polis.murzin.MyDAO;
 
 /**
@@ -43,6 +44,20 @@ public final class DAOFactory {
      */
     @NotNull
     static DAO create(@NotNull final File data) throws IOException {
+        return create(data, Config.builder(MAX_HEAP / 60).build());
+    }
+
+    /**
+     * Construct a {@link DAO} instance with custom tuning.
+     *
+     * @param data local disk folder to persist the data to
+     * @param config tuning of the storage, e.g. commit log durability
+     * @return a storage instance
+     */
+    @NotNull
+    static DAO create(
+            @NotNull final File data,
+            @NotNull final Config config) throws IOException {
         if (Runtime.getRuntime().maxMemory() > MAX_HEAP) {
             throw new IllegalStateException("The heap is too big. Consider setting Xmx.");
         }
@@ -55,6 +70,6 @@ public final class DAOFactory {
             throw new IllegalArgumentException("Path is not a directory: " + data);
         }
 
-        return new MyDAO(data, MAX_HEAP / 60);
+        return new MyDAO(data, config);
     }
 }
@@ -0,0 +1,356 @@
+package ru.mail.polis;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load driver which runs YCSB core workloads against {@link DAO} and reports throughput
+ * and latency percentiles of every operation.
+ *
+ * <p>Records are loaded first unless the storage already has them, then the workload runs for the duration.
+ * Options are given as {@code --name value}:
+ * <ul>
+ * <li>{@code workload} -- one of YCSB core workloads A to F, A by default</li>
+ * <li>{@code distribution} -- uniform, zipfian or latest popularity of keys, the one of the workload by default</li>
+ * <li>{@code records} -- number of records to load, 100000 by default</li>
+ * <li>{@code threads} -- number of client threads, 1 by default</li>
+ * <li>{@code target} -- total operations per second or 0 for as many as possible, 0 by default</li>
+ * <li>{@code duration} -- seconds to run the workload, 60 by default</li>
+ * <li>{@code value-size} -- bytes of every value, 1000 by default</li>
+ * <li>{@code data} -- directory of the storage, "data" by default</li>
+ * <li>{@code skip-load} -- true to run against records loaded before, false by default</li>
+ * </ul>
+ *
+ * <p>Latency of a throttled operation is counted from the time it was scheduled at rather than started at,
+ * so stalls of the storage are not hidden by the client waiting for them.
+ */
+public final class LoadDriver {
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+    private static final int MAX_SCAN_LENGTH = 100;
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private final DAO dao;
+    private final Workload workload;
+    private final Distribution distribution;
+    private final long records;
+    private final int valueSize;
+    private final ZipfianGenerator zipfian;
+    // Records inserted by the load phase and the workload so far
+    private final AtomicLong inserted;
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    private LoadDriver(
+            @NotNull final DAO dao,
+            @NotNull final Workload workload,
+            @NotNull final Distribution distribution,
+            final long records,
+            final int valueSize) {
+        this.dao = dao;
+        this.workload = workload;
+        this.distribution = distribution;
+        this.records = records;
+        this.valueSize = valueSize;
+        this.zipfian = distribution == Distribution.UNIFORM ? null : new ZipfianGenerator(records);
+        this.inserted = new AtomicLong(records);
+        for (final Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY, 3));
+        }
+    }
+
+    /**
+     * Run the workload.
+     * @param args options as described by {@link LoadDriver}
+     * @throws IOException if the storage is failed
+     * @throws InterruptedException if interrupted while waiting for client threads
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Map<String, String> options = parse(args);
+        final Workload workload = Workload.valueOf(option(options, "workload", "A").toUpperCase());
+        final String distributionName = options.get("distribution");
+        final Distribution distribution = distributionName == null
+                ? workload.distribution
+                : Distribution.valueOf(distributionName.toUpperCase());
+        final long records = Long.parseLong(option(options, "records", "100000"));
+        final int threads = Integer.parseInt(option(options, "threads", "1"));
+        final double target = Double.parseDouble(option(options, "target", "0"));
+        final long duration = Long.parseLong(option(options, "duration", "60"));
+        final int valueSize = Integer.parseInt(option(options, "value-size", "1000"));
+        final boolean skipLoad = Boolean.parseBoolean(option(options, "skip-load", "false"));
+
+        final File data = new File(option(options, "data", "data"));
+        if (!data.exists() && !data.mkdirs()) {
+            throw new IOException("Can't create directory: " + data);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            final LoadDriver driver = new LoadDriver(dao, workload, distribution, records, valueSize);
+            if (!skipLoad) {
+                final long start = System.nanoTime();
+                driver.load(threads);
+                final long elapsed = System.nanoTime() - start;
+                log.info("Loaded {} records in {} ms", records, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            log.info("Running workload {} with {} keys by {} threads", workload, distribution, threads);
+            final long start = System.nanoTime();
+            driver.run(threads, target, TimeUnit.SECONDS.toNanos(duration));
+            driver.report(System.nanoTime() - start);
+        }
+    }
+
+    private static Map<String, String> parse(@NotNull final String[] args) {
+        final Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            result.put(args[i].substring(2), args[i + 1]);
+        }
+        return result;
+    }
+
+    private static String option(
+            @NotNull final Map<String, String> options,
+            @NotNull final String name,
+            @NotNull final String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private void load(final int threads) throws InterruptedException, IOException {
+        final AtomicLong next = new AtomicLong();
+        runAll(threads, () -> {
+            for (long i = next.getAndIncrement(); i < records; i = next.getAndIncrement()) {
+                dao.upsert(key(i), value());
+            }
+            return null;
+        });
+    }
+
+    private void run(
+            final int threads,
+            final double target,
+            final long duration) throws InterruptedException, IOException {
+        final long start = System.nanoTime();
+        final long deadline = start + duration;
+        // Every thread issues its share of the target throughput at a fixed pace
+        final long interval = target > 0 ? (long) (threads * TimeUnit.SECONDS.toNanos(1) / target) : 0;
+        runAll(threads, () -> {
+            long scheduled = start + (interval > 0 ? ThreadLocalRandom.current().nextLong(interval) : 0);
+            while (true) {
+                if (interval > 0) {
+                    final long now = System.nanoTime();
+                    if (scheduled > now) {
+                        LockSupport.parkNanos(scheduled - now);
+                    }
+                } else {
+                    scheduled = System.nanoTime();
+                }
+                if (scheduled >= deadline) {
+                    return null;
+                }
+                final Operation operation = workload.next();
+                execute(operation);
+                latencies.get(operation).recordValue(Math.min(System.nanoTime() - scheduled, MAX_LATENCY));
+                scheduled += interval;
+            }
+        });
+    }
+
+    private void execute(@NotNull final Operation operation) throws IOException {
+        switch (operation) {
+            case READ:
+                read(key(nextKey()));
+                break;
+            case UPDATE:
+                dao.upsert(key(nextKey()), value());
+                break;
+            case INSERT:
+                dao.upsert(key(inserted.getAndIncrement()), value());
+                break;
+            case SCAN:
+                final Iterator<Record> scan = dao.iterator(key(nextKey()));
+                final int length = 1 + ThreadLocalRandom.current().nextInt(MAX_SCAN_LENGTH);
+                for (int i = 0; i < length && scan.hasNext(); i++) {
+                    scan.next();
+                }
+                break;
+            case READ_MODIFY_WRITE:
+                final ByteBuffer key = key(nextKey());
+                read(key);
+                dao.upsert(key, value());
+                break;
+            default:
+                throw new IllegalStateException("Unsupported operation: " + operation);
+        }
+    }
+
+    private void read(@NotNull final ByteBuffer key) throws IOException {
+        try {
+            dao.get(key);
+        } catch (NoSuchElementException e) {
+            // Keys being inserted concurrently may be absent yet
+        }
+    }
+
+    /**
+     * Choose number of an existing record according to the distribution.
+     */
+    private long nextKey() {
+        // Records inserted during the run are chosen too, the latest ones are the most popular for LATEST
+        final long items = inserted.get();
+        switch (distribution) {
+            case UNIFORM:
+                return ThreadLocalRandom.current().nextLong(items);
+            case ZIPFIAN:
+                return zipfian.nextScrambled(items);
+            case LATEST:
+                return items - 1 - zipfian.next(items);
+            default:
+                throw new IllegalStateException("Unsupported distribution: " + distribution);
+        }
+    }
+
+    /**
+     * Key of the record, hashed so records are not inserted in order of keys.
+     */
+    private static ByteBuffer key(final long record) {
+        final String key = "user" + Long.toUnsignedString(ZipfianGenerator.fnvHash(record));
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer value() {
+        final byte[] value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        return ByteBuffer.wrap(value);
+    }
+
+    private void report(final long elapsed) {
+        long total = 0;
+        for (final Histogram histogram : latencies.values()) {
+            total += histogram.getTotalCount();
+        }
+        final double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        log.info(String.format("Throughput: %.1f ops/s in %.1f s", total / seconds, seconds));
+        for (final Map.Entry<Operation, Histogram> entry : latencies.entrySet()) {
+            final Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            log.info(String.format(
+                    "%s: count=%d, ops/s=%.1f, latency us: "
+                            + "mean=%.1f, p50=%.1f, p95=%.1f, p99=%.1f, p99.9=%.1f, max=%.1f",
+                    entry.getKey(),
+                    histogram.getTotalCount(),
+                    histogram.getTotalCount() / seconds,
+                    histogram.getMean() / 1000,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(95) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+        }
+        log.info("Stats of DAO: {}", dao.stats());
+    }
+
+    private static void runAll(
+            final int threads,
+            @NotNull final Task task) throws InterruptedException, IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(task::run));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Client thread is failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        Void run() throws IOException;
+    }
+
+    private enum Operation {
+        READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE
+    }
+
+    private enum Distribution {
+        UNIFORM, ZIPFIAN, LATEST
+    }
+
+    /**
+     * Operation mixes of YCSB core workloads.
+     */
+    private enum Workload {
+        // Update heavy: session store recording recent actions
+        A(Distribution.ZIPFIAN, 0.5, 0.5, 0, 0, 0),
+        // Read mostly: photo tagging
+        B(Distribution.ZIPFIAN, 0.95, 0.05, 0, 0, 0),
+        // Read only: user profile cache
+        C(Distribution.ZIPFIAN, 1, 0, 0, 0, 0),
+        // Read latest: user status updates
+        D(Distribution.LATEST, 0.95, 0, 0.05, 0, 0),
+        // Short ranges: threaded conversations
+        E(Distribution.ZIPFIAN, 0, 0, 0.05, 0.95, 0),
+        // Read-modify-write: user database
+        F(Distribution.ZIPFIAN, 0.5, 0, 0, 0, 0.5);
+
+        private final Distribution distribution;
+        // Proportions of operations in the order of their declaration
+        private final double[] proportions;
+
+        Workload(
+                final Distribution distribution,
+                final double... proportions) {
+            this.distribution = distribution;
+            this.proportions = proportions;
+        }
+
+        Operation next() {
+            double choice = ThreadLocalRandom.current().nextDouble();
+            int last = 0;
+            for (int i = 0; i < proportions.length; i++) {
+                if (proportions[i] == 0) {
+                    continue;
+                }
+                last = i;
+                choice -= proportions[i];
+                if (choice < 0) {
+                    break;
+                }
+            }
+            // Rounding of proportions may leave a bit of the choice to the last operation
+            return Operation.values()[last];
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a {@link DAO} as of the moment it was taken, unaffected by later writes and compactions.
+ * The DAO keeps data for the snapshot until it is closed.
+ */
+public interface Snapshot extends Closeable {
+    /**
+     * Provides iterator (possibly empty) over {@link Record}s starting at "from" key (inclusive)
+     * in <b>ascending</b> order according to {@link Record#compareTo(Record)}.
+     */
+    @NotNull
+    Iterator<Record> iterator(@NotNull ByteBuffer from) throws IOException;
+
+    /**
+     * Obtains {@link Record} corresponding to given key.
+     *
+     * @throws NoSuchElementException if no such record
+     */
+    @NotNull
+    ByteBuffer get(@NotNull ByteBuffer key) throws IOException, NoSuchElementException;
+}
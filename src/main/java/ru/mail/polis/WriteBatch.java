@@ -0,0 +1,87 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Group of upserts and removals to be applied by {@link DAO#apply(WriteBatch)} in order of addition.
+ */
+public final class WriteBatch {
+    private final List<Mutation> mutations = new ArrayList<>();
+
+    /**
+     * Add upsert of the key.
+     * @param key key to update
+     * @param value new value of the key
+     * @return this batch
+     */
+    @NotNull
+    public WriteBatch upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        mutations.add(new Mutation(key, value));
+        return this;
+    }
+
+    /**
+     * Add removal of the key.
+     * @param key key to remove
+     * @return this batch
+     */
+    @NotNull
+    public WriteBatch remove(@NotNull final ByteBuffer key) {
+        mutations.add(new Mutation(key, null));
+        return this;
+    }
+
+    public int size() {
+        return mutations.size();
+    }
+
+    public boolean isEmpty() {
+        return mutations.isEmpty();
+    }
+
+    @NotNull
+    public List<Mutation> mutations() {
+        return Collections.unmodifiableList(mutations);
+    }
+
+    /**
+     * Single upsert or removal of a batch.
+     */
+    public static final class Mutation {
+        private final ByteBuffer key;
+        private final ByteBuffer value;
+
+        Mutation(
+                @NotNull final ByteBuffer key,
+                @Nullable final ByteBuffer value) {
+            this.key = key.duplicate();
+            this.value = value == null ? null : value.duplicate();
+        }
+
+        @NotNull
+        public ByteBuffer getKey() {
+            return key.duplicate();
+        }
+
+        /**
+         * Get value of upsert.
+         * @return the value or null for removal
+         */
+        @Nullable
+        public ByteBuffer getValue() {
+            return value == null ? null : value.duplicate();
+        }
+
+        public boolean isRemove() {
+            return value == null;
+        }
+    }
+}
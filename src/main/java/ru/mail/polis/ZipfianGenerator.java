@@ -0,0 +1,143 @@
+package ru.mail.polis;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generator of item numbers from 0 to the count where small numbers are the most popular ones,
+ * as described in "Quickly Generating Billion-Record Synthetic Databases" by Gray et al.
+ * and used by YCSB.
+ */
+final class ZipfianGenerator {
+    static final double ZIPFIAN_CONSTANT = 0.99;
+
+    private final double theta;
+    private final double alpha;
+    private final double zeta2;
+    private final double half;
+    // Items grow as records are inserted, so zeta is extended rather than computed anew
+    private volatile Zeta zeta;
+
+    /**
+     * Generator with the default skew of YCSB.
+     * @param items initial number of items
+     */
+    ZipfianGenerator(final long items) {
+        this(items, ZIPFIAN_CONSTANT);
+    }
+
+    /**
+     * Generator of given skew.
+     * @param items initial number of items
+     * @param theta skew, the greater the more popular are the first items
+     */
+    ZipfianGenerator(
+            final long items,
+            final double theta) {
+        if (items <= 0) {
+            throw new IllegalArgumentException("Number of items should be positive: " + items);
+        }
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zeta2 = zeta(0, 0, 2, theta);
+        this.half = 1 + Math.pow(0.5, theta);
+        this.zeta = zetaOf(items, zeta(0, 0, items, theta));
+    }
+
+    /**
+     * Extend the sum of {@code 1 / i^theta} for i up to from to i up to n.
+     */
+    private static double zeta(
+            final double sum,
+            final long from,
+            final long n,
+            final double theta) {
+        double result = sum;
+        for (long i = from + 1; i <= n; i++) {
+            result += 1 / Math.pow(i, theta);
+        }
+        return result;
+    }
+
+    /**
+     * Next item of the current number of items, as in the latest and scrambled generators of YCSB.
+     * @param items current number of items, which is not expected to decrease
+     * @return item number less than the number of items
+     */
+    long next(final long items) {
+        if (items <= 0) {
+            throw new IllegalArgumentException("Number of items should be positive: " + items);
+        }
+        Zeta current = zeta;
+        if (current.items < items) {
+            current = grow(items);
+        }
+        final double u = ThreadLocalRandom.current().nextDouble();
+        final double uz = u * current.zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < half) {
+            return Math.min(items - 1, 1);
+        }
+        // Concurrent callers may pass a count which is already exceeded, it is off by a few items only
+        final double eta = current.eta;
+        return Math.min(items - 1, (long) (current.items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * Next item with popular ones spread over the whole range rather than clustered at its start.
+     * @param items current number of items
+     * @return item number less than the number of items
+     */
+    long nextScrambled(final long items) {
+        return Math.floorMod(fnvHash(next(items)), items);
+    }
+
+    private synchronized Zeta grow(final long items) {
+        final Zeta current = zeta;
+        if (current.items >= items) {
+            return current;
+        }
+        final Zeta grown = zetaOf(items, zeta(current.zetan, current.items, items, theta));
+        zeta = grown;
+        return grown;
+    }
+
+    private Zeta zetaOf(
+            final long items,
+            final double zetan) {
+        final double eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+        return new Zeta(items, zetan, eta);
+    }
+
+    /**
+     * FNV-1a hash of the number.
+     * @param value the number
+     * @return the hash
+     */
+    static long fnvHash(final long value) {
+        long hash = 0xCBF29CE484222325L;
+        long rest = value;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= rest & 0xFF;
+            hash *= 0x100000001B3L;
+            rest >>>= 8;
+        }
+        return hash;
+    }
+
+    private static final class Zeta {
+        final long items;
+        final double zetan;
+        final double eta;
+
+        Zeta(
+                final long items,
+                final double zetan,
+                final double eta) {
+            this.items = items;
+            this.zetan = zetan;
+            this.eta = eta;
+        }
+    }
+}
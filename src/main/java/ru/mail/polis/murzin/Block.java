@@ -0,0 +1,35 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoded data block of the block-based SSTable format.
+ */
+interface Block {
+    int count();
+
+    @NotNull
+    Cell cellAt(int i);
+
+    /**
+     * Find the first cell whose key is not less than given one.
+     * @param key key to look for
+     * @return index of the cell, {@link #count()} if every key is less
+     */
+    default int lowerBound(@NotNull ByteBuffer key) {
+        return lowerBound(key, 0);
+    }
+
+    /**
+     * Find the first cell whose key is not less than given one, knowing that keys before from are less.
+     * Lookups of ascending keys from the previous result cost about the distance between them.
+     * @param key key to look for
+     * @param from index to start from
+     * @return index of the cell, {@link #count()} if every key is less
+     */
+    int lowerBound(
+            @NotNull ByteBuffer key,
+            int from);
+}
@@ -0,0 +1,235 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of SSTable blocks shared by all tables of a DAO.
+ *
+ * <p>Blocks are copied into direct buffers, so cached bytes are not limited by heap size.
+ * Evicted buffers are freed only by GC though, so the cache takes at most half of the direct memory limit,
+ * see {@link #maxCapacity()}. The cache is split into independently locked segments to keep readers from contending.
+ */
+public final class BlockCache {
+    private static final int SEGMENTS = 16;
+    private static final String MAX_DIRECT_MEMORY = "-XX:MaxDirectMemorySize=";
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long segmentCapacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Cache of blocks.
+     * @param capacity total size of cached blocks in bytes
+     */
+    public BlockCache(final long capacity) {
+        this.segmentCapacity = capacity / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Get cached block.
+     * @param generation generation of the table
+     * @param offset offset of the block in the table file
+     * @return block bytes or null if block is not cached
+     */
+    @Nullable
+    ByteBuffer get(final int generation, final long offset) {
+        final Key key = new Key(generation, offset);
+        final ByteBuffer result = segmentOf(key).get(key);
+        if (result == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return result.duplicate();
+    }
+
+    /**
+     * Cache a copy of the block, evicting least recently used blocks if needed.
+     * @param generation generation of the table
+     * @param offset offset of the block in the table file
+     * @param block block bytes
+     * @return cached copy of the block or the block itself if it is too large to be cached
+     */
+    @NotNull
+    ByteBuffer put(
+            final int generation,
+            final long offset,
+            @NotNull final ByteBuffer block) {
+        if (block.remaining() > segmentCapacity) {
+            return block;
+        }
+        final ByteBuffer copy = ByteBuffer.allocateDirect(block.remaining());
+        copy.put(block.duplicate());
+        copy.flip();
+        final Key key = new Key(generation, offset);
+        segmentOf(key).put(key, copy);
+        return copy.duplicate();
+    }
+
+    /**
+     * Drop every cached block of the table.
+     * @param generation generation of the table
+     */
+    void invalidate(final int generation) {
+        for (final Segment segment : segments) {
+            segment.invalidate(generation);
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get size of cached blocks.
+     * @return size in bytes
+     */
+    public long size() {
+        long result = 0;
+        for (final Segment segment : segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    /**
+     * Get the largest budget of the cache, which leaves room in direct memory for blocks evicted but not freed yet.
+     * Direct memory is limited by {@code -XX:MaxDirectMemorySize} or by max heap size if it is not set.
+     * @return half of the direct memory limit in bytes
+     */
+    static long maxCapacity() {
+        long limit = 0;
+        for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // The last option wins as it does for the JVM
+            if (argument.startsWith(MAX_DIRECT_MEMORY)) {
+                limit = parseSize(argument.substring(MAX_DIRECT_MEMORY.length()));
+            }
+        }
+        if (limit <= 0) {
+            limit = Runtime.getRuntime().maxMemory();
+        }
+        return limit / 2;
+    }
+
+    /**
+     * Parse size of a JVM option.
+     * @param size number with optional k, m, g or t suffix
+     * @return size in bytes
+     */
+    static long parseSize(@NotNull final String size) {
+        if (size.isEmpty()) {
+            throw new IllegalArgumentException("Empty size");
+        }
+        final int shift;
+        switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 'k':
+                shift = 10;
+                break;
+            case 'm':
+                shift = 20;
+                break;
+            case 'g':
+                shift = 30;
+                break;
+            case 't':
+                shift = 40;
+                break;
+            default:
+                return Long.parseLong(size);
+        }
+        return Long.parseLong(size.substring(0, size.length() - 1)) << shift;
+    }
+
+    private Segment segmentOf(@NotNull final Key key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<Key, ByteBuffer> blocks = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        synchronized ByteBuffer get(@NotNull final Key key) {
+            return blocks.get(key);
+        }
+
+        synchronized void put(
+                @NotNull final Key key,
+                @NotNull final ByteBuffer block) {
+            final ByteBuffer previous = blocks.put(key, block);
+            if (previous != null) {
+                size -= previous.capacity();
+            }
+            size += block.capacity();
+
+            final Iterator<ByteBuffer> lru = blocks.values().iterator();
+            while (size > segmentCapacity) {
+                size -= lru.next().capacity();
+                lru.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void invalidate(final int generation) {
+            final Iterator<Map.Entry<Key, ByteBuffer>> entries = blocks.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<Key, ByteBuffer> entry = entries.next();
+                if (entry.getKey().generation == generation) {
+                    size -= entry.getValue().capacity();
+                    entries.remove();
+                }
+            }
+        }
+
+        synchronized long size() {
+            return size;
+        }
+    }
+
+    private static final class Key {
+        private final int generation;
+        private final long offset;
+
+        Key(final int generation, final long offset) {
+            this.generation = generation;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return generation == key.generation && offset == key.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * generation + Long.hashCode(offset * 0x9E3779B97F4A7C15L);
+        }
+    }
+}
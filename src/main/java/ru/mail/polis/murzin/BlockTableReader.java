@@ -0,0 +1,340 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reader of the block-based format: data blocks, sparse index with a separator key
+ * of every block and fixed size footer.
+ *
+ * <p>Separator of a block is greater than every key of the previous block
+ * and not greater than the first key of the block, empty for the first block.
+ * Index entry is {@code [block offset][block size][raw size][first row][key size][separator]},
+ * footer is {@code [index offset][index size][blocks][rows][codec][max timestamp][tombstones size][version][magic]}.
+ * A block is stored compressed by the codec unless its size equals raw size.
+ * Range tombstones follow the index as {@code {[from size][from][to size or -1 if unbounded][to][timestamp]}}.
+ * Keys of a block share their prefixes, see {@link PrefixBlock}.
+ */
+final class BlockTableReader implements TableReader {
+    static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES
+            + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final FileSource source;
+    private final int generation;
+    private final BlockCache cache;
+    private final Codec codec;
+    private final int rows;
+    private final long maxTimeStamp;
+    private final List<RangeTombstone> rangeTombstones = new ArrayList<>();
+    private final long[] blockOffsets;
+    private final int[] blockSizes;
+    private final int[] rawSizes;
+    private final int[] firstRows;
+    private final ByteBuffer[] separators;
+
+    BlockTableReader(
+            @NotNull final FileSource source,
+            final int generation,
+            @Nullable final BlockCache cache) throws IOException {
+        this.source = source;
+        this.generation = generation;
+        this.cache = cache;
+        final ByteBuffer footer = source.read(source.size() - FOOTER_SIZE, FOOTER_SIZE);
+        final long indexOffset = footer.getLong();
+        final int indexSize = footer.getInt();
+        final int blocks = footer.getInt();
+        final long rowsValue = footer.getLong();
+        assert rowsValue <= Integer.MAX_VALUE;
+        this.rows = (int) rowsValue;
+        this.codec = Codec.of(footer.getInt());
+        this.maxTimeStamp = footer.getLong();
+        final int tombstonesSize = footer.getInt();
+
+        this.blockOffsets = new long[blocks];
+        this.blockSizes = new int[blocks];
+        this.rawSizes = new int[blocks];
+        this.firstRows = new int[blocks];
+        this.separators = new ByteBuffer[blocks];
+        final ByteBuffer index = source.read(indexOffset, indexSize);
+        for (int i = 0; i < blocks; i++) {
+            blockOffsets[i] = index.getLong();
+            blockSizes[i] = index.getInt();
+            rawSizes[i] = index.getInt();
+            firstRows[i] = index.getInt();
+            final int keySize = index.getInt();
+            separators[i] = index.slice().limit(keySize);
+            index.position(index.position() + keySize);
+        }
+
+        // Tombstones are few, so they are kept on heap rather than in the file source
+        if (tombstonesSize > 0) {
+            final ByteBuffer tombstones = source.read(indexOffset + indexSize, tombstonesSize);
+            while (tombstones.hasRemaining()) {
+                final ByteBuffer from = copyOf(tombstones, tombstones.getInt());
+                final int toSize = tombstones.getInt();
+                final ByteBuffer to = toSize < 0 ? null : copyOf(tombstones, toSize);
+                rangeTombstones.add(new RangeTombstone(from, to, tombstones.getLong()));
+            }
+        }
+    }
+
+    private static ByteBuffer copyOf(
+            @NotNull final ByteBuffer buffer,
+            final int size) {
+        final ByteBuffer copy = ByteBuffer.allocate(size);
+        copy.put(buffer.duplicate().limit(buffer.position() + size));
+        buffer.position(buffer.position() + size);
+        return copy.flip();
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public long maxTimeStamp() {
+        return maxTimeStamp;
+    }
+
+    @NotNull
+    @Override
+    public List<RangeTombstone> rangeTombstones() {
+        return rangeTombstones;
+    }
+
+    @NotNull
+    @Override
+    public List<ByteBuffer> samples() {
+        // Every block starts at its separator and holds about the same number of bytes
+        final List<ByteBuffer> result = new ArrayList<>(Math.max(separators.length - 1, 0));
+        for (int i = 1; i < separators.length; i++) {
+            result.add(copyOf(separators[i].duplicate(), separators[i].remaining()));
+        }
+        return result;
+    }
+
+    @Override
+    public int position(@NotNull final ByteBuffer key) throws IOException {
+        final int block = search(key, false);
+        if (block < 0) {
+            return 0;
+        }
+        return firstRows[block] + block(block).lowerBound(key);
+    }
+
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) throws IOException {
+        if (rows == 0) {
+            return null;
+        }
+        // Separator of the first block is empty, so some block is always found
+        final Block block = block(search(key, true));
+        final int i = block.lowerBound(key);
+        if (i == block.count()) {
+            return null;
+        }
+        final Cell cell = block.cellAt(i);
+        return cell.getKey().equals(key) ? cell.getValue() : null;
+    }
+
+    @NotNull
+    @Override
+    public Value[] getAll(@NotNull final List<ByteBuffer> keys) throws IOException {
+        final Value[] result = new Value[keys.size()];
+        if (rows == 0) {
+            return result;
+        }
+
+        // Cursor moves forward only: the current block and the first cell not less than the previous key
+        int index = -1;
+        Block block = null;
+        int from = 0;
+        for (int i = 0; i < result.length; i++) {
+            final ByteBuffer key = keys.get(i);
+            final int next = gallop(key, Math.max(index, 0));
+            if (next != index) {
+                index = next;
+                block = block(index);
+                from = 0;
+            }
+            from = block.lowerBound(key, from);
+            if (from == block.count()) {
+                continue;
+            }
+            final Cell cell = block.cellAt(from);
+            if (cell.getKey().equals(key)) {
+                result[i] = cell.getValue();
+                from++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the last block whose separator is not greater than the key, starting from a block
+     * whose separator is not greater than it either. Galloping makes the cost logarithmic
+     * in the distance between the blocks rather than in the number of blocks.
+     */
+    private int gallop(
+            @NotNull final ByteBuffer key,
+            final int from) {
+        int low = from;
+        int high = from + 1;
+        int step = 1;
+        while (high < separators.length && separators[high].compareTo(key) <= 0) {
+            low = high;
+            step <<= 1;
+            high = low + step;
+        }
+
+        int left = low + 1;
+        int right = Math.min(high, separators.length) - 1;
+        while (left <= right) {
+            final int mid = left + ((right - left) >> 1);
+            if (separators[mid].compareTo(key) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return left - 1;
+    }
+
+    /**
+     * Find the last block whose separator is less than the key, or equal to it if inclusive.
+     * Every key before the separator is less than the key too.
+     */
+    private int search(
+            @NotNull final ByteBuffer key,
+            final boolean inclusive) {
+        int left = 0;
+        int right = separators.length - 1;
+        while (left <= right) {
+            final int mid = left + ((right - left) >> 1);
+            final int cmp = separators[mid].compareTo(key);
+            if (cmp < 0 || inclusive && cmp == 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return left - 1;
+    }
+
+    private Block block(final int i) throws IOException {
+        if (cache == null) {
+            return new PrefixBlock(read(i));
+        }
+
+        final ByteBuffer cached = cache.get(generation, blockOffsets[i]);
+        if (cached != null) {
+            return new PrefixBlock(cached);
+        }
+        return new PrefixBlock(cache.put(generation, blockOffsets[i], read(i)));
+    }
+
+    private ByteBuffer read(final int i) throws IOException {
+        final ByteBuffer stored = source.read(blockOffsets[i], blockSizes[i]);
+        if (blockSizes[i] == rawSizes[i]) {
+            return stored;
+        }
+        final byte[] raw = new byte[rawSizes[i]];
+        codec.decompress(stored, raw, 0, raw.length);
+        return ByteBuffer.wrap(raw);
+    }
+
+    private int blockAt(final int row) {
+        int left = 0;
+        int right = firstRows.length - 1;
+        while (left < right) {
+            final int mid = left + ((right - left + 1) >> 1);
+            if (firstRows[mid] <= row) {
+                left = mid;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return left;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> iterator(final int row) {
+        return new Iterator<>() {
+            int next = row;
+            int index = -1;
+            Block block;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public Cell next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("FileTable iterator has not next element");
+                }
+
+                try {
+                    if (block == null || next - firstRows[index] >= block.count()) {
+                        index = block == null ? blockAt(next) : index + 1;
+                        block = block(index);
+                    }
+                    return block.cellAt(next++ - firstRows[index]);
+                } catch (IOException e) {
+                    throw new CellReadRuntimeException("Unable to read cell at position " + next, e);
+                }
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> descendingIterator(final int row) {
+        return new Iterator<>() {
+            int next = row;
+            int index = -1;
+            // Cells of the current block decoded forward up to the row, as blocks are decoded forward only
+            Cell[] cells = new Cell[0];
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Cell next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("FileTable iterator has not next element");
+                }
+
+                try {
+                    if (index < 0 || next < firstRows[index]) {
+                        index = index < 0 ? blockAt(next) : index - 1;
+                        final Block block = block(index);
+                        final int count = next - firstRows[index] + 1;
+                        if (cells.length < count) {
+                            cells = new Cell[count];
+                        }
+                        for (int i = 0; i < count; i++) {
+                            cells[i] = block.cellAt(i);
+                        }
+                    }
+                    return cells[next-- - firstRows[index]];
+                } catch (IOException e) {
+                    throw new CellReadRuntimeException("Unable to read cell at position " + next, e);
+                }
+            }
+        };
+    }
+}
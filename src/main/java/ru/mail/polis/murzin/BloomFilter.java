@@ -0,0 +1,148 @@
+package ru.mail.polis.murzin;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter over keys of a single SSTable.
+ *
+ * <p>Probes are derived from one 64-bit murmur3 hash by double hashing,
+ * so a key is hashed once per lookup no matter how many tables are checked.
+ * File format is {@code [hashes][words]{[word]}}, the file is written under a temporary name
+ * and renamed, so it is either complete or absent.
+ */
+public final class BloomFilter {
+    private static final HashFunction MURMUR = Hashing.murmur3_128();
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+    private static final int HEADER = Integer.BYTES * 2;
+    private static final String TEMP = ".tmp";
+
+    private final int hashes;
+    private final long[] words;
+
+    private BloomFilter(final int hashes, final long[] words) {
+        this.hashes = hashes;
+        this.words = words;
+    }
+
+    /**
+     * Build empty filter sized up front, so keys are added as they are written.
+     * @param keys expected number of keys
+     * @return filter with about 1% false positive rate unless it gets more keys than expected
+     */
+    @NotNull
+    static BloomFilter create(final long keys) {
+        final int bits = (int) Math.min(Integer.MAX_VALUE, Math.max(Long.SIZE, keys * BITS_PER_KEY));
+        return new BloomFilter(HASHES, new long[(bits + Long.SIZE - 1) / Long.SIZE]);
+    }
+
+    static long hash(@NotNull final ByteBuffer key) {
+        return MURMUR.newHasher().putBytes(key.duplicate()).hash().asLong();
+    }
+
+    /**
+     * Add the key by its hash.
+     * @param hash hash obtained by {@link #hash(ByteBuffer)}
+     */
+    void add(final long hash) {
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = bitOf(hash, i);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(final long hash) {
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = bitOf(hash, i);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long bitOf(final long hash, final int i) {
+        final int combined = (int) hash + i * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % ((long) words.length * Long.SIZE);
+    }
+
+    /**
+     * Write the filter into a file, replacing the previous one at once.
+     * @param to file of the filter
+     * @param sync whether to force the file to disk
+     * @throws IOException if write is failed
+     */
+    void write(
+            @NotNull final File to,
+            final boolean sync) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER + Long.BYTES * words.length);
+        buffer.putInt(hashes);
+        buffer.putInt(words.length);
+        buffer.asLongBuffer().put(words);
+        buffer.rewind();
+        final File tmp = new File(to.getParentFile(), to.getName() + TEMP);
+        try (FileChannel fc = FileChannel.open(
+                tmp.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            while (buffer.hasRemaining()) {
+                fc.write(buffer);
+            }
+            if (sync) {
+                fc.force(true);
+            }
+        }
+        Files.move(tmp.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read the filter checking its header against the size of the file.
+     * @param from file of the filter
+     * @return the filter
+     * @throws IOException if read is failed or the file is truncated or corrupted
+     */
+    @NotNull
+    static BloomFilter read(@NotNull final File from) throws IOException {
+        try (FileChannel fc = FileChannel.open(from.toPath(), StandardOpenOption.READ)) {
+            final long size = fc.size();
+            if (size < HEADER) {
+                throw new IOException("Truncated Bloom filter " + from);
+            }
+            final ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining()) {
+                if (fc.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated Bloom filter " + from);
+                }
+            }
+            header.rewind();
+            final int hashes = header.getInt();
+            final int length = header.getInt();
+            if (hashes <= 0 || length <= 0 || size != HEADER + (long) Long.BYTES * length) {
+                throw new IOException("Corrupted Bloom filter " + from);
+            }
+            final ByteBuffer body = ByteBuffer.allocate(Long.BYTES * length);
+            while (body.hasRemaining()) {
+                if (fc.read(body, HEADER + body.position()) < 0) {
+                    throw new IOException("Truncated Bloom filter " + from);
+                }
+            }
+            final long[] words = new long[length];
+            body.rewind();
+            body.asLongBuffer().get(words);
+            return new BloomFilter(hashes, words);
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.util.Comparator;
 public class Cell {
     public static final Comparator<Cell> COMPARATOR =
             Comparator.comparing(Cell::getKey).thenComparing(Cell::getValue);
+    // Keys go in descending order, versions of a key still go from the freshest one
+    public static final Comparator<Cell> DESCENDING_COMPARATOR =
+            Comparator.comparing(Cell::getKey, Comparator.reverseOrder()).thenComparing(Cell::getValue);
 
     private final ByteBuffer key;
     private final Value value;
@@ -0,0 +1,54 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File source which issues a positional read into a fresh heap buffer per request.
+ */
+final class ChannelFileSource implements FileSource {
+    private final FileChannel fileChannel;
+    private final long size;
+
+    ChannelFileSource(@NotNull final File file) throws IOException {
+        this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = fileChannel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int readInt(final long offset) throws IOException {
+        return read(offset, Integer.BYTES).getInt();
+    }
+
+    @Override
+    public long readLong(final long offset) throws IOException {
+        return read(offset, Long.BYTES).getLong();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer read(final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (offset + buffer.position()));
+            }
+        }
+        return buffer.rewind();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
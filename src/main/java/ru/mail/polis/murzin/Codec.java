@@ -0,0 +1,77 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression of SSTable data blocks. Id of the codec is stored in the table footer.
+ */
+public interface Codec {
+    /**
+     * Blocks are stored as is.
+     */
+    Codec NONE = new NoneCodec();
+
+    /**
+     * Fast compression in LZ4 block format.
+     */
+    Codec LZ4 = new Lz4Codec();
+
+    int id();
+
+    /**
+     * Get size of buffer which fits any compressed data.
+     * @param length size of uncompressed data
+     * @return size in bytes
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compress data.
+     * @param src array with data
+     * @param srcOffset offset of data in src
+     * @param length size of data
+     * @param dst array of at least {@link #maxCompressedLength(int)} bytes after dstOffset
+     * @param dstOffset offset to write compressed data at
+     * @return size of compressed data
+     */
+    int compress(
+            @NotNull byte[] src,
+            int srcOffset,
+            int length,
+            @NotNull byte[] dst,
+            int dstOffset);
+
+    /**
+     * Decompress data.
+     * @param src compressed data between position and limit
+     * @param dst array to fill
+     * @param dstOffset offset of uncompressed data in dst
+     * @param length size of uncompressed data
+     * @throws IOException if compressed data is corrupted
+     */
+    void decompress(
+            @NotNull ByteBuffer src,
+            @NotNull byte[] dst,
+            int dstOffset,
+            int length) throws IOException;
+
+    /**
+     * Find codec by id.
+     * @param id id of the codec
+     * @return the codec
+     * @throws IOException if the codec is unknown
+     */
+    @NotNull
+    static Codec of(final int id) throws IOException {
+        if (id == NONE.id()) {
+            return NONE;
+        }
+        if (id == LZ4.id()) {
+            return LZ4;
+        }
+        throw new IOException("Unknown codec " + id);
+    }
+}
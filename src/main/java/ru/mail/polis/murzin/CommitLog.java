@@ -0,0 +1,453 @@
+package ru.mail.polis.murzin;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of MemTable mutations, split into one segment per MemTable.
+ *
+ * <p>Record is {@code [length][crc32][count]{[type][timestamp][key size][key][value size][value]}},
+ * value part is absent for tombstones and expiring values store {@code [expiry]} before it.
+ * Range tombstone is a record of its own,
+ * {@code [length][crc32][1][type][timestamp][from size][from][to size or -1 if unbounded][to]}.
+ */
+public class CommitLog implements Closeable {
+    private static final String SUFFIX = "_CommitLog.log";
+    private static final int HEADER = Integer.BYTES * 2;
+    private static final int MAX_BUFFER = 1024 * 1024;
+    private static final byte UPSERT = 0;
+    private static final byte REMOVE = 1;
+    private static final byte REMOVE_RANGE = 2;
+    private static final byte UPSERT_EXPIRING = 3;
+
+    private final File base;
+    private final Durability durability;
+    private final ScheduledExecutorService syncer;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final CRC32 crc = new CRC32();
+    // Segments rolled but not forced yet, oldest first, and position of the end of the last one
+    private final Deque<FileChannel> rolled = new ArrayDeque<>();
+    private long rolledUpTo;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private long segment;
+    private long segmentStart;
+    private volatile long written;
+    private volatile long synced;
+    private volatile IOException syncError;
+
+    /**
+     * Commit log which continues after segments already present in base directory.
+     * @param base path to working directory
+     * @param config durability settings
+     * @throws IOException if new segment can`t be created
+     */
+    CommitLog(
+            @NotNull final File base,
+            @NotNull final Config config) throws IOException {
+        this.base = base;
+        this.durability = config.getDurability();
+        long last = 0;
+        for (final long id : segments()) {
+            last = Math.max(last, id);
+        }
+        this.segment = last + 1;
+        this.channel = open(segment);
+
+        if (durability == Durability.PERIODIC) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("commit-log-sync").setDaemon(true).build());
+            syncer.scheduleWithFixedDelay(
+                    this::syncInBackground,
+                    config.getSyncPeriodMillis(),
+                    config.getSyncPeriodMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    /**
+     * Feed every intact record of previous segments to consumer, oldest first.
+     * Replay of a segment stops at the first torn or corrupted record.
+     * @param consumer receiver of replayed mutations
+     * @param rangeConsumer receiver of replayed range tombstones
+     * @throws IOException if segment can`t be read
+     */
+    void replay(
+            @NotNull final BiConsumer<ByteBuffer, Value> consumer,
+            @NotNull final Consumer<RangeTombstone> rangeConsumer) throws IOException {
+        for (final long id : segments()) {
+            if (id >= segment) {
+                continue;
+            }
+            final Path path = pathOf(id);
+            if (replay(path, consumer, rangeConsumer) == 0) {
+                // Nothing to lose
+                Files.delete(path);
+            }
+        }
+    }
+
+    private int replay(
+            @NotNull final Path path,
+            @NotNull final BiConsumer<ByteBuffer, Value> consumer,
+            @NotNull final Consumer<RangeTombstone> rangeConsumer) throws IOException {
+        int records = 0;
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = fc.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER);
+            long offset = 0;
+            while (offset + HEADER <= size) {
+                fc.read(header.clear(), offset);
+                final int length = header.getInt(0);
+                final int checksum = header.getInt(Integer.BYTES);
+                if (length < Integer.BYTES || offset + HEADER + length > size) {
+                    break;
+                }
+
+                final ByteBuffer payload = ByteBuffer.allocate(length);
+                fc.read(payload, offset + HEADER);
+                payload.flip();
+                final CRC32 check = new CRC32();
+                check.update(payload.duplicate());
+                if ((int) check.getValue() != checksum) {
+                    break;
+                }
+
+                decode(payload, consumer, rangeConsumer);
+                records++;
+                offset += HEADER + length;
+            }
+        }
+        return records;
+    }
+
+    private static void decode(
+            @NotNull final ByteBuffer payload,
+            @NotNull final BiConsumer<ByteBuffer, Value> consumer,
+            @NotNull final Consumer<RangeTombstone> rangeConsumer) {
+        final int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            final byte type = payload.get();
+            final long timeStamp = payload.getLong();
+            final ByteBuffer key = slice(payload, payload.getInt());
+            if (type == REMOVE_RANGE) {
+                final int toSize = payload.getInt();
+                rangeConsumer.accept(new RangeTombstone(key, toSize < 0 ? null : slice(payload, toSize), timeStamp));
+            } else if (type == REMOVE) {
+                consumer.accept(key, new Value(timeStamp, null));
+            } else if (type == UPSERT_EXPIRING) {
+                final long expiresAt = payload.getLong();
+                consumer.accept(key, new Value(timeStamp, slice(payload, payload.getInt()), expiresAt));
+            } else {
+                consumer.accept(key, new Value(timeStamp, slice(payload, payload.getInt())));
+            }
+        }
+    }
+
+    private static ByteBuffer slice(
+            @NotNull final ByteBuffer payload,
+            final int size) {
+        final ByteBuffer result = payload.slice();
+        result.limit(size);
+        payload.position(payload.position() + size);
+        return result;
+    }
+
+    /**
+     * Append mutations to the current segment as a single record, which is replayed either whole or not at all.
+     * @param cells keys with new values or tombstones
+     * @return position to pass to {@link #sync(long)} before acknowledging the write
+     * @throws IOException if write is failed
+     */
+    long append(@NotNull final List<Cell> cells) throws IOException {
+        int length = Integer.BYTES;
+        for (final Cell cell : cells) {
+            final Value value = cell.getValue();
+            final int valueSize = value.isRemoved() ? 0 : Integer.BYTES + value.getData().remaining();
+            final int expirySize = value.isExpiring() ? Long.BYTES : 0;
+            length += Byte.BYTES + Long.BYTES + Integer.BYTES + cell.getKey().remaining() + expirySize + valueSize;
+        }
+
+        return append(length, record -> {
+            record.putInt(cells.size());
+            for (final Cell cell : cells) {
+                final ByteBuffer key = cell.getKey();
+                final Value value = cell.getValue();
+                record.put(value.isRemoved() ? REMOVE : value.isExpiring() ? UPSERT_EXPIRING : UPSERT);
+                record.putLong(value.getTimeStamp());
+                record.putInt(key.remaining());
+                record.put(key.duplicate());
+                if (value.isExpiring()) {
+                    record.putLong(value.getExpiresAt());
+                }
+                if (!value.isRemoved()) {
+                    final ByteBuffer data = value.getData();
+                    record.putInt(data.remaining());
+                    record.put(data);
+                }
+            }
+        });
+    }
+
+    /**
+     * Append range tombstone to the current segment as a single record.
+     * @param tombstone the tombstone
+     * @return position to pass to {@link #sync(long)} before acknowledging the write
+     * @throws IOException if write is failed
+     */
+    long append(@NotNull final RangeTombstone tombstone) throws IOException {
+        final ByteBuffer from = tombstone.from();
+        final ByteBuffer to = tombstone.to();
+        final int length = Integer.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES + from.remaining()
+                + Integer.BYTES + (to == null ? 0 : to.remaining());
+
+        return append(length, record -> {
+            record.putInt(1);
+            record.put(REMOVE_RANGE);
+            record.putLong(tombstone.timeStamp());
+            record.putInt(from.remaining());
+            record.put(from);
+            if (to == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(to.remaining());
+                record.put(to);
+            }
+        });
+    }
+
+    private long append(
+            final int length,
+            @NotNull final Consumer<ByteBuffer> encoder) throws IOException {
+        final IOException error = syncError;
+        if (error != null) {
+            throw new IOException("Commit log is not durable anymore", error);
+        }
+
+        synchronized (writeLock) {
+            final ByteBuffer record = bufferFor(HEADER + length);
+            record.position(HEADER);
+            encoder.accept(record);
+            record.flip();
+
+            crc.reset();
+            crc.update(record.duplicate().position(HEADER));
+            record.putInt(0, length);
+            record.putInt(Integer.BYTES, (int) crc.getValue());
+
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            written += HEADER + length;
+            return written;
+        }
+    }
+
+    private ByteBuffer bufferFor(final int size) {
+        if (size > MAX_BUFFER) {
+            return ByteBuffer.allocate(size);
+        }
+        if (size > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Math.min(MAX_BUFFER, Integer.highestOneBit(size) << 1));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Get size of records appended since the log was opened.
+     * @return size in bytes
+     */
+    long bytesWritten() {
+        return written;
+    }
+
+    /**
+     * Make the write acknowledgeable according to durability mode.
+     * In {@link Durability#BATCH} mode the first waiting writer forces the log
+     * on behalf of every record appended so far, the rest just find their position synced.
+     * @param position value returned by {@link #append(List)}
+     * @throws IOException if fsync is failed
+     */
+    void sync(final long position) throws IOException {
+        if (durability == Durability.BATCH) {
+            force(position);
+        }
+    }
+
+    private void force(final long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            final long target;
+            final FileChannel fc;
+            final List<FileChannel> pending;
+            synchronized (writeLock) {
+                target = written;
+                fc = channel;
+                pending = new ArrayList<>(rolled);
+            }
+            // Records up to the target may be in segments rolled meanwhile, which are forced first
+            sealRolled(pending);
+            fc.force(false);
+            synced = target;
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            force(written);
+        } catch (IOException e) {
+            syncError = e;
+        }
+    }
+
+    /**
+     * Start a new segment for the next MemTable. The previous segment is only forced by {@link #seal()},
+     * so it is not waited for by writers blocked while segments are switched.
+     * @return id of the previous segment
+     * @throws IOException if segment can`t be created
+     */
+    long roll() throws IOException {
+        synchronized (writeLock) {
+            final FileChannel next = open(segment + 1);
+            rolled.add(channel);
+            rolledUpTo = written;
+            channel = next;
+            segmentStart = written;
+            return segment++;
+        }
+    }
+
+    /**
+     * Force and close segments rolled before.
+     * @throws IOException if segment can`t be synced, so the log is not durable anymore
+     */
+    void seal() throws IOException {
+        synchronized (syncLock) {
+            final List<FileChannel> pending;
+            final long target;
+            synchronized (writeLock) {
+                if (rolled.isEmpty()) {
+                    return;
+                }
+                pending = new ArrayList<>(rolled);
+                target = rolledUpTo;
+            }
+            sealRolled(pending);
+            synced = Math.max(synced, target);
+        }
+    }
+
+    /**
+     * Force and close the oldest rolled segments, the caller holds {@link #syncLock}.
+     */
+    private void sealRolled(@NotNull final List<FileChannel> pending) throws IOException {
+        for (final FileChannel fc : pending) {
+            try {
+                if (durability != Durability.NONE) {
+                    fc.force(false);
+                }
+                fc.close();
+            } catch (IOException e) {
+                syncError = e;
+                throw e;
+            }
+            synchronized (writeLock) {
+                rolled.remove();
+            }
+        }
+    }
+
+    /**
+     * Delete sealed segments whose MemTables have already been flushed.
+     * @param upTo id of the last segment to delete
+     * @throws IOException if segment can`t be deleted
+     */
+    void release(final long upTo) throws IOException {
+        seal();
+        for (final long id : segments()) {
+            if (id <= upTo) {
+                Files.deleteIfExists(pathOf(id));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                for (final FileChannel fc : rolled) {
+                    if (durability != Durability.NONE) {
+                        fc.force(false);
+                    }
+                    fc.close();
+                }
+                rolled.clear();
+                if (durability != Durability.NONE) {
+                    channel.force(false);
+                }
+                channel.close();
+                if (written == segmentStart) {
+                    Files.deleteIfExists(pathOf(segment));
+                }
+            }
+        }
+    }
+
+    private FileChannel open(final long id) throws IOException {
+        return FileChannel.open(
+                pathOf(id),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+    }
+
+    private Path pathOf(final long id) {
+        return new File(base, id + SUFFIX).toPath();
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(base.toPath())) {
+            return files.filter(Files::isRegularFile)
+                    .map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> name.substring(0, name.length() - SUFFIX.length()))
+                    .filter(id -> !id.isEmpty() && id.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
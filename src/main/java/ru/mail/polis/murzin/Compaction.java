@@ -0,0 +1,75 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compaction chosen by a {@link CompactionStrategy}: which tables to merge and how to write the result.
+ */
+public final class Compaction {
+    private final List<FileTable> tables;
+    private final int level;
+    private final long maxTableSize;
+    private final boolean dropRemovals;
+    private final int maxParts;
+
+    /**
+     * Compaction of tables into a single table unless it is limited in size.
+     * @param tables tables to merge
+     * @param level level of the resulting tables
+     * @param maxTableSize size in bytes to start the next resulting table at
+     * @param dropRemovals whether no table outside of the merged ones may hold removed keys
+     */
+    Compaction(
+            @NotNull final List<FileTable> tables,
+            final int level,
+            final long maxTableSize,
+            final boolean dropRemovals) {
+        this(tables, level, maxTableSize, dropRemovals, 1);
+    }
+
+    /**
+     * Compaction of tables, whose key space may be split into ranges merged in parallel.
+     * @param tables tables to merge
+     * @param level level of the resulting tables
+     * @param maxTableSize size in bytes to start the next resulting table at
+     * @param dropRemovals whether no table outside of the merged ones may hold removed keys
+     * @param maxParts number of key ranges to split into at most, every range is written to its own tables
+     */
+    Compaction(
+            @NotNull final List<FileTable> tables,
+            final int level,
+            final long maxTableSize,
+            final boolean dropRemovals,
+            final int maxParts) {
+        assert maxParts > 0;
+        this.tables = Collections.unmodifiableList(tables);
+        this.level = level;
+        this.maxTableSize = maxTableSize;
+        this.dropRemovals = dropRemovals;
+        this.maxParts = maxParts;
+    }
+
+    @NotNull
+    List<FileTable> tables() {
+        return tables;
+    }
+
+    int level() {
+        return level;
+    }
+
+    long maxTableSize() {
+        return maxTableSize;
+    }
+
+    boolean dropRemovals() {
+        return dropRemovals;
+    }
+
+    int maxParts() {
+        return maxParts;
+    }
+}
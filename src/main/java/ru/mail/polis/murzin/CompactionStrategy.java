@@ -0,0 +1,29 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Policy which decides when and which SSTables of {@link MyDAO} are merged.
+ *
+ * <p>Both methods are called on the compaction thread only and must not modify the list.
+ */
+public interface CompactionStrategy {
+    /**
+     * Choose background compaction.
+     * @param tables SSTables of the DAO
+     * @return compaction to run or null if tables are fine as they are
+     */
+    @Nullable
+    Compaction pick(@NotNull List<FileTable> tables);
+
+    /**
+     * Choose compaction of every table requested by {@link MyDAO#compact()}.
+     * @param tables SSTables of the DAO
+     * @return compaction to run or null if there is nothing to compact
+     */
+    @Nullable
+    Compaction major(@NotNull List<FileTable> tables);
+}
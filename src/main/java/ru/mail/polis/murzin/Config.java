@@ -0,0 +1,244 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tuning knobs of {@link MyDAO}.
+ */
+public final class Config {
+    private final long flushThreshold;
+    private final Durability durability;
+    private final long syncPeriodMillis;
+    private final boolean mapped;
+    private final int blockSize;
+    private final long cacheSize;
+    private final int maxPendingFlushes;
+    private final CompactionStrategy compactionStrategy;
+    private final boolean syncTables;
+    private final Codec codec;
+    private final int compactionThreads;
+
+    private Config(final Builder builder) {
+        this.flushThreshold = builder.flushThreshold;
+        this.durability = builder.durability;
+        this.syncPeriodMillis = builder.syncPeriodMillis;
+        this.mapped = builder.mapped;
+        this.blockSize = builder.blockSize;
+        this.cacheSize = builder.cacheSize;
+        this.maxPendingFlushes = builder.maxPendingFlushes;
+        this.compactionStrategy = builder.compactionStrategy;
+        this.syncTables = builder.syncTables;
+        this.codec = builder.codec;
+        this.compactionThreads = builder.compactionThreads;
+    }
+
+    /**
+     * Start building configuration with defaults for everything but flush threshold.
+     * @param flushThreshold size of MemTable in bytes which triggers flush
+     * @return builder of configuration
+     */
+    @NotNull
+    public static Builder builder(final long flushThreshold) {
+        return new Builder(flushThreshold);
+    }
+
+    public long getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    @NotNull
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public long getSyncPeriodMillis() {
+        return syncPeriodMillis;
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public int getMaxPendingFlushes() {
+        return maxPendingFlushes;
+    }
+
+    @NotNull
+    public CompactionStrategy getCompactionStrategy() {
+        return compactionStrategy;
+    }
+
+    public boolean isSyncTables() {
+        return syncTables;
+    }
+
+    @NotNull
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getCompactionThreads() {
+        return compactionThreads;
+    }
+
+    public static final class Builder {
+        private final long flushThreshold;
+        private Durability durability = Durability.PERIODIC;
+        private long syncPeriodMillis = 100L;
+        private boolean mapped;
+        private int blockSize = 4 * 1024;
+        private long cacheSize = Math.min(32 * 1024 * 1024, BlockCache.maxCapacity());
+        private int maxPendingFlushes = 1;
+        private CompactionStrategy compactionStrategy = new FullCompactionStrategy(8);
+        private boolean syncTables = true;
+        private Codec codec = Codec.NONE;
+        private int compactionThreads = Runtime.getRuntime().availableProcessors();
+
+        private Builder(final long flushThreshold) {
+            assert flushThreshold >= 0L;
+            this.flushThreshold = flushThreshold;
+        }
+
+        @NotNull
+        public Builder durability(@NotNull final Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        /**
+         * Set period of background fsync for {@link Durability#PERIODIC}.
+         * @param syncPeriodMillis period in milliseconds
+         * @return this builder
+         */
+        @NotNull
+        public Builder syncPeriodMillis(final long syncPeriodMillis) {
+            if (syncPeriodMillis <= 0) {
+                throw new IllegalArgumentException("Sync period should be positive: " + syncPeriodMillis);
+            }
+            this.syncPeriodMillis = syncPeriodMillis;
+            return this;
+        }
+
+        /**
+         * Choose how SSTables are read.
+         * @param mapped true to map files into memory, false to use positional FileChannel reads
+         * @return this builder
+         */
+        @NotNull
+        public Builder mapped(final boolean mapped) {
+            this.mapped = mapped;
+            return this;
+        }
+
+        /**
+         * Set size of SSTable data blocks to aim for, a single large cell may exceed it.
+         * @param blockSize size in bytes
+         * @return this builder
+         */
+        @NotNull
+        public Builder blockSize(final int blockSize) {
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("Block size should be positive: " + blockSize);
+            }
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Set budget of the off-heap block cache of decompressed blocks, which is used unless tables are mapped
+         * into memory without compression. The budget is limited by half of the direct memory limit, which is
+         * max heap size unless {@code -XX:MaxDirectMemorySize} is set, as evicted blocks are freed only by GC.
+         * @param cacheSize size in bytes, 0 disables the cache
+         * @return this builder
+         */
+        @NotNull
+        public Builder cacheSize(final long cacheSize) {
+            if (cacheSize < 0) {
+                throw new IllegalArgumentException("Cache size should not be negative: " + cacheSize);
+            }
+            final long maxCacheSize = BlockCache.maxCapacity();
+            if (cacheSize > maxCacheSize) {
+                throw new IllegalArgumentException(
+                        "Cache size " + cacheSize + " exceeds half of the direct memory limit: " + maxCacheSize);
+            }
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Set how many frozen MemTables may wait for background flush before writers stall.
+         * Every pending MemTable holds up to flush threshold bytes of heap.
+         * @param maxPendingFlushes number of MemTables
+         * @return this builder
+         */
+        @NotNull
+        public Builder maxPendingFlushes(final int maxPendingFlushes) {
+            if (maxPendingFlushes <= 0) {
+                throw new IllegalArgumentException("Pending flushes limit should be positive: " + maxPendingFlushes);
+            }
+            this.maxPendingFlushes = maxPendingFlushes;
+            return this;
+        }
+
+        /**
+         * Choose how SSTables are merged in background.
+         * @param compactionStrategy strategy of compaction
+         * @return this builder
+         */
+        @NotNull
+        public Builder compactionStrategy(@NotNull final CompactionStrategy compactionStrategy) {
+            this.compactionStrategy = compactionStrategy;
+            return this;
+        }
+
+        /**
+         * Choose whether written SSTables are forced to disk before they replace commit log or compacted tables.
+         * Without it a crash of the OS may lose flushed data.
+         * @param syncTables true to fsync every written table
+         * @return this builder
+         */
+        @NotNull
+        public Builder syncTables(final boolean syncTables) {
+            this.syncTables = syncTables;
+            return this;
+        }
+
+        /**
+         * Choose compression of SSTable blocks written from now on, tables already written keep their codec.
+         * @param codec codec of blocks
+         * @return this builder
+         */
+        @NotNull
+        public Builder codec(@NotNull final Codec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Set how many threads merge key ranges of a single compaction in parallel.
+         * @param compactionThreads number of threads, 1 merges every compaction on the compaction thread
+         * @return this builder
+         */
+        @NotNull
+        public Builder compactionThreads(final int compactionThreads) {
+            if (compactionThreads <= 0) {
+                throw new IllegalArgumentException("Compaction threads should be positive: " + compactionThreads);
+            }
+            this.compactionThreads = compactionThreads;
+            return this;
+        }
+
+        @NotNull
+        public Config build() {
+            return new Config(this);
+        }
+    }
+}
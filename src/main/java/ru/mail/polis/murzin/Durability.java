@@ -0,0 +1,21 @@
+package ru.mail.polis.murzin;
+
+/**
+ * How hard {@link CommitLog} tries to get acknowledged writes onto the disk.
+ */
+public enum Durability {
+    /**
+     * Records are handed to the OS, but never forced: survives a process crash, not a power loss.
+     */
+    NONE,
+
+    /**
+     * Records are forced by a background thread every {@link Config#getSyncPeriodMillis()}.
+     */
+    PERIODIC,
+
+    /**
+     * Writer is acknowledged only after its record is forced; concurrent writers share one fsync.
+     */
+    BATCH
+}
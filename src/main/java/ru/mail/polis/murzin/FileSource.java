@@ -0,0 +1,43 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to immutable bytes of a table file.
+ */
+public interface FileSource extends Closeable {
+    long size();
+
+    int readInt(long offset) throws IOException;
+
+    long readLong(long offset) throws IOException;
+
+    /**
+     * Read bytes of the file.
+     * @param offset position in the file
+     * @param length number of bytes
+     * @return buffer positioned at 0 with given number of bytes remaining
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    ByteBuffer read(long offset, int length) throws IOException;
+
+    /**
+     * Open file for reading.
+     * @param file file to read
+     * @param mapped whether to map the file into memory instead of using positional reads
+     * @return source of the file bytes
+     * @throws IOException if file can`t be opened or mapped
+     */
+    @NotNull
+    static FileSource open(
+            @NotNull final File file,
+            final boolean mapped) throws IOException {
+        return mapped ? new MappedFileSource(file) : new ChannelFileSource(file);
+    }
+}
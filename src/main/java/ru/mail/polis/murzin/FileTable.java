@@ -1,198 +1,591 @@
 package ru.mail.polis.murzin;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.mail.polis.Iters;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.LongBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileTable implements Table, Closeable {
-    private final int rows;
-    private final LongBuffer offsets;
-    private final FileChannel fileChannel;
+    static final long MAGIC = 0x4C534D5353544142L;
+    static final int VERSION = 2;
+
+    private static final String FILTER_SUFFIX = ".bloom";
+    private static final String LEVEL_SUFFIX = ".level";
+    // Longer keys are kept truncated in bounds of the table, so huge keys don't pin heap
+    private static final int MAX_BOUND_SIZE = 256;
+    private static final Logger log = LoggerFactory.getLogger(FileTable.class);
+
+    private final File file;
+    private final boolean mapped;
+    private final int generation;
+    private final int level;
+    private final long size;
+    private final boolean empty;
+    private final ByteBuffer lowerBound;
+    private final ByteBuffer upperBound;
+    private final long maxTimeStamp;
+    private final RangeTombstones rangeTombstones;
+    private final BlockCache cache;
+    // The table set owns one reference, every open iterator owns one more
+    private final AtomicInteger refs = new AtomicInteger(1);
+    // Opened on the first read unless the table is opened right away
+    private volatile FileSource source;
+    private volatile TableReader reader;
+    // Loaded on the first lookup, tables written before filters were introduced have none
+    private volatile boolean filterLoaded;
+    private volatile BloomFilter filter;
 
     /**
-     * Sorted String Table, which use FileChannel for read and write operations.
+     * Sorted String Table, which reads the file either by FileChannel or by memory mapping.
+     * Both block-based and original (without footer) formats are supported.
+     * The file is opened right away to read metadata of the table.
      * @param file of this table
-     * @throws IOException if FileChannel manipulations is failed
+     * @param generation generation of this table
+     * @param mapped whether to map the file into memory
+     * @param cache cache of blocks shared by tables or null to read blocks every time
+     * @throws IOException if file manipulations is failed
      */
-    FileTable(final File file) throws IOException {
-        this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
-        final long fileSize = file.length();
-        assert fileSize <= Integer.MAX_VALUE;
+    FileTable(
+            final File file,
+            final int generation,
+            final boolean mapped,
+            @Nullable final BlockCache cache) throws IOException {
+        this.file = file;
+        this.mapped = mapped;
+        this.generation = generation;
+        this.cache = cache;
+        this.source = FileSource.open(file, mapped);
+        this.size = source.size();
+        this.reader = readerOf(source, generation, cache);
+        this.maxTimeStamp = reader.maxTimeStamp();
+        this.level = readLevel(levelOf(file));
 
-        // Rows
-        long offset = fileChannel.size() - Long.BYTES;
-        final long rowsValue = readLong(fileChannel, offset);
-        assert rowsValue <= Integer.MAX_VALUE;
-        this.rows = (int) rowsValue;
+        // Bounds cover range tombstones too, so the table is not skipped by reads they shadow
+        this.rangeTombstones = RangeTombstones.of(reader.rangeTombstones());
+        final int rows = reader.rows();
+        this.empty = rows == 0 && rangeTombstones.isEmpty();
+        ByteBuffer lower = null;
+        ByteBuffer upper = null;
+        boolean unbounded = false;
+        if (rows > 0) {
+            lower = lowerBoundOf(reader.iterator(0).next().getKey());
+            upper = upperBoundOf(reader.iterator(rows - 1).next().getKey());
+            unbounded = upper == null;
+        }
+        if (!rangeTombstones.isEmpty()) {
+            final ByteBuffer from = lowerBoundOf(rangeTombstones.lowerBound());
+            if (lower == null || from.compareTo(lower) < 0) {
+                lower = from;
+            }
+            final ByteBuffer to = rangeTombstones.upperBound();
+            final ByteBuffer bound = to == null ? null : upperBoundOf(to);
+            if (bound == null) {
+                unbounded = true;
+            } else if (upper == null || bound.compareTo(upper) > 0) {
+                upper = bound;
+            }
+        }
+        this.lowerBound = lower;
+        this.upperBound = unbounded ? null : upper;
+    }
 
-        // Offsets
-        offset -= (long) Long.BYTES * rows;
-        this.offsets = readBuffer(fileChannel, offset, Long.BYTES * rows).asLongBuffer();
+    /**
+     * Sorted String Table with metadata recorded by {@link Manifest}, whose file is opened on the first read.
+     * @param file of this table
+     * @param generation generation of this table
+     * @param level compaction level of this table
+     * @param size size of the file in bytes
+     * @param lowerBound bound obtained by {@link #lowerBound()}
+     * @param upperBound bound obtained by {@link #upperBound()}
+     * @param maxTimeStamp timestamp obtained by {@link #maxTimeStamp()}
+     * @param rangeTombstones range tombstones of this table
+     * @param mapped whether to map the file into memory
+     * @param cache cache of blocks shared by tables or null to read blocks every time
+     */
+    FileTable(
+            @NotNull final File file,
+            final int generation,
+            final int level,
+            final long size,
+            @Nullable final ByteBuffer lowerBound,
+            @Nullable final ByteBuffer upperBound,
+            final long maxTimeStamp,
+            @NotNull final RangeTombstones rangeTombstones,
+            final boolean mapped,
+            @Nullable final BlockCache cache) {
+        this.file = file;
+        this.mapped = mapped;
+        this.generation = generation;
+        this.level = level;
+        this.size = size;
+        this.empty = lowerBound == null;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.maxTimeStamp = maxTimeStamp;
+        this.rangeTombstones = rangeTombstones;
+        this.cache = cache;
     }
 
-    static void write(final Iterator<Cell> cellsIterator, final File to) throws IOException {
-        try (FileChannel fc = FileChannel.open(
-                to.toPath(),
-                StandardOpenOption.CREATE_NEW,
-                StandardOpenOption.WRITE
-        )) {
-            final List<Long> listOffsets = new ArrayList<>();
-            long offset = 0;
-            while (cellsIterator.hasNext()) {
-                listOffsets.add(offset);
-
-                final Cell cell = cellsIterator.next();
-
-                // Key
-                final ByteBuffer key = cell.getKey();
-                final int keySize = cell.getKey().remaining();
-                fc.write(Bytes.fromInt(keySize));
-                offset += Integer.BYTES;
-                fc.write(key);
-                offset += keySize;
-
-                // Value
-                final Value value = cell.getValue();
-
-                // Timestamp
-                final long timeStamp = cell.getValue().getTimeStamp();
-                fc.write(Bytes.fromLong(value.isRemoved()
-                        ? -timeStamp
-                        : timeStamp));
-                offset += Long.BYTES;
-
-                // Value
-                if (!value.isRemoved()) {
-                    final ByteBuffer valueData = value.getData();
-                    final int valueSize = valueData.remaining();
-                    fc.write(Bytes.fromInt(valueSize));
-                    offset += Integer.BYTES;
-                    fc.write(valueData);
-                    offset += valueSize;
+    private static TableReader readerOf(
+            @NotNull final FileSource source,
+            final int generation,
+            @Nullable final BlockCache cache) throws IOException {
+        return isBlockFormat(source)
+                ? new BlockTableReader(source, generation, cache)
+                : new LegacyTableReader(source);
+    }
+
+    /**
+     * Open the file unless it is already open.
+     * @return reader of the file
+     * @throws IOException if the table is closed or open of the file is failed
+     */
+    @NotNull
+    private TableReader reader() throws IOException {
+        final TableReader current = reader;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (reader == null) {
+                if (isReleased()) {
+                    throw new IOException("Table " + file + " is closed");
                 }
+                final FileSource opened = FileSource.open(file, mapped);
+                final TableReader tableReader;
+                try {
+                    tableReader = readerOf(opened, generation, cache);
+                } catch (IOException | RuntimeException e) {
+                    opened.close();
+                    throw e;
+                }
+                source = opened;
+                reader = tableReader;
             }
-            // Offsets
-            for (final Long anOffset : listOffsets) {
-                fc.write(Bytes.fromLong(anOffset));
+            return reader;
+        }
+    }
+
+    /**
+     * Load the filter unless it is already loaded.
+     * @return the filter or null if it is missing or broken, so every key might be in the table
+     */
+    @Nullable
+    private BloomFilter filter() {
+        if (!filterLoaded) {
+            synchronized (this) {
+                if (!filterLoaded) {
+                    final File filterFile = filterOf(file);
+                    try {
+                        filter = filterFile.exists() ? BloomFilter.read(filterFile) : null;
+                    } catch (IOException e) {
+                        log.warn("Bloom filter {} is ignored", filterFile, e);
+                    }
+                    filterLoaded = true;
+                }
             }
+        }
+        return filter;
+    }
+
+    private static ByteBuffer lowerBoundOf(@NotNull final ByteBuffer key) {
+        return copyOf(key, Math.min(key.remaining(), MAX_BOUND_SIZE));
+    }
 
-            // Cells
-            fc.write(Bytes.fromLong(listOffsets.size()));
+    /**
+     * Get a key not less than given one and at most {@link #MAX_BOUND_SIZE} long.
+     * @return the bound or null if there is none
+     */
+    @Nullable
+    private static ByteBuffer upperBoundOf(@NotNull final ByteBuffer key) {
+        if (key.remaining() <= MAX_BOUND_SIZE) {
+            return copyOf(key, key.remaining());
         }
+        final ByteBuffer result = copyOf(key, MAX_BOUND_SIZE);
+        // Increment the prefix in the signed byte order of ByteBuffer.compareTo()
+        for (int i = MAX_BOUND_SIZE - 1; i >= 0; i--) {
+            final byte b = result.get(i);
+            if (b != Byte.MAX_VALUE) {
+                result.put(i, (byte) (b + 1));
+                return result.limit(i + 1);
+            }
+        }
+        return null;
     }
 
-    private ByteBuffer keyAt(final int i) throws IOException {
-        assert 0 <= i && i < rows;
-        assert fileChannel != null;
-        final long offset = offsets.get(i);
-        assert offset <= Integer.MAX_VALUE;
+    private static ByteBuffer copyOf(
+            @NotNull final ByteBuffer key,
+            final int length) {
+        final ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(key.duplicate().limit(key.position() + length));
+        return copy.flip();
+    }
 
-        final int keySize = readInt(fileChannel, (int) offset);
+    /**
+     * Check whether the table is in the block-based format rather than in the original one.
+     * @return true if the footer ends with the magic
+     * @throws IOException if the version of the block-based format is not supported
+     */
+    private static boolean isBlockFormat(@NotNull final FileSource source) throws IOException {
+        final long size = source.size();
+        if (size < BlockTableReader.FOOTER_SIZE || source.readLong(size - Long.BYTES) != MAGIC) {
+            return false;
+        }
 
-        return readBuffer(fileChannel, offset + Integer.BYTES, keySize);
+        final int version = source.readInt(size - Long.BYTES - Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException("Unsupported SSTable format version " + version);
+        }
+        return true;
     }
 
-    private Cell cellAt(final int i) throws IOException {
-        assert 0 <= i && i < rows;
-        assert fileChannel != null;
-        long offset = offsets.get(i);
-        assert offset <= Integer.MAX_VALUE;
+    /**
+     * File with Bloom filter of the table, shared by temporary and final names of the table.
+     * @param table file of the table
+     * @return file of the filter
+     */
+    static File filterOf(final File table) {
+        return sidecarOf(table, FILTER_SUFFIX);
+    }
+
+    /**
+     * File with compaction level of the table, which is absent for level 0.
+     * @param table file of the table
+     * @return file of the level
+     */
+    static File levelOf(final File table) {
+        return sidecarOf(table, LEVEL_SUFFIX);
+    }
 
-        // Key
-        final int keySize = readInt(fileChannel, (int) offset);
-        offset += Integer.BYTES;
-        final ByteBuffer key = readBuffer(fileChannel, offset, keySize);
-        offset += keySize;
+    private static File sidecarOf(
+            final File table,
+            final String suffix) {
+        final String name = table.getName();
+        final int dot = name.lastIndexOf('.');
+        return new File(table.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + suffix);
+    }
 
-        // Timestamp
-        final long timeStamp = readLong(fileChannel, (int) offset);
-        offset += Long.BYTES;
+    /**
+     * Write cells into the table file and their Bloom filter and level next to it.
+     * @param cellsIterator cells in ascending order of keys, which are left unread past the size limit
+     * @param to file of the table
+     * @param config block size and durability of the table
+     * @param level compaction level of the table
+     * @param maxSize size in bytes to stop writing at
+     * @param tombstones range tombstones, of which only parts before the first unread cell are written
+     * @param expectedRows number of rows to size the Bloom filter for
+     * @throws IOException if write is failed
+     */
+    static void write(
+            final PeekingIterator<Cell> cellsIterator,
+            final File to,
+            final Config config,
+            final int level,
+            final long maxSize,
+            final RangeTombstones tombstones,
+            final long expectedRows) throws IOException {
+        try (TableWriter writer = new TableWriter(to, config, expectedRows)) {
+            while (cellsIterator.hasNext() && writer.size() < maxSize) {
+                writer.append(cellsIterator.next());
+            }
+            writer.finish(tombstones.clip(null, cellsIterator.hasNext() ? cellsIterator.peek().getKey() : null));
+        }
+        writeLevel(levelOf(to), level, config.isSyncTables());
+    }
 
-        if (timeStamp < 0) {
-            return new Cell(key.slice(), new Value(-timeStamp, null));
-        } else {
-            final int valueSize = readInt(fileChannel, (int) offset);
-            offset += Integer.BYTES;
-            final ByteBuffer value = readBuffer(fileChannel, offset, valueSize);
-            return new Cell(key, new Value(timeStamp, value));
+    private static void writeLevel(
+            final File file,
+            final int level,
+            final boolean sync) throws IOException {
+        if (level == 0) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt(level).flip();
+        try (FileChannel fc = FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                fc.write(buffer);
+            }
+            if (sync) {
+                fc.force(true);
+            }
         }
     }
 
-    private int position(final ByteBuffer from) throws IOException {
-        int left = 0;
-        int right = rows - 1;
-        while (left <= right) {
-            final int mid = left + ((right - left) >> 1);
-            final int cmp = from.compareTo(keyAt(mid));
-            if (cmp < 0) {
-                right = mid - 1;
-            } else if (cmp > 0) {
-                left = mid + 1;
-            } else {
-                return mid;
+    private static int readLevel(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer) < 0) {
+                    throw new IOException("Truncated level file " + file);
+                }
             }
+            return buffer.flip().getInt();
         }
-        return left;
     }
 
-    private static long readLong(final FileChannel fc, final long offset) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        fc.read(buffer, offset);
-        return buffer.rewind().getLong();
+    int generation() {
+        return generation;
     }
 
-    private static int readInt(final FileChannel fc, final long offset) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
-        fc.read(buffer, offset);
-        return buffer.rewind().getInt();
+    int level() {
+        return level;
+    }
+
+    long sizeInBytes() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Get a key not greater than every key of the table.
+     * @return the least key or its prefix, null if the table is empty
+     */
+    @Nullable
+    ByteBuffer lowerBound() {
+        return lowerBound == null ? null : lowerBound.duplicate();
     }
 
-    private static ByteBuffer readBuffer(final FileChannel fc, final long offset, final int size) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(size);
-        fc.read(buffer, offset);
-        return buffer.rewind();
+    /**
+     * Least bound of non-empty tables.
+     * @param tables the tables
+     * @return the bound or null if every table is empty
+     */
+    @Nullable
+    static ByteBuffer lowerBound(@NotNull final Collection<FileTable> tables) {
+        ByteBuffer result = null;
+        for (final FileTable table : tables) {
+            final ByteBuffer bound = table.lowerBound();
+            if (bound != null && (result == null || bound.compareTo(result) < 0)) {
+                result = bound;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a key not less than every key of the table.
+     * @return the greatest key or a successor of its prefix, null if the table is empty or unbounded
+     */
+    @Nullable
+    ByteBuffer upperBound() {
+        return upperBound == null ? null : upperBound.duplicate();
+    }
+
+    /**
+     * Greatest bound of non-empty tables.
+     * @param tables the tables
+     * @return the bound or null if some table is unbounded
+     */
+    @Nullable
+    static ByteBuffer upperBound(@NotNull final Collection<FileTable> tables) {
+        ByteBuffer result = null;
+        for (final FileTable table : tables) {
+            if (table.isEmpty()) {
+                continue;
+            }
+            final ByteBuffer bound = table.upperBound();
+            if (bound == null) {
+                return null;
+            }
+            if (result == null || bound.compareTo(result) > 0) {
+                result = bound;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check whether the table may have keys within the range.
+     * @param from least key of the range
+     * @param to greatest key of the range or null if the range is unbounded
+     * @return false if every key of the table is out of the range
+     */
+    boolean overlaps(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return !empty
+                && (to == null || lowerBound.compareTo(to) <= 0)
+                && (upperBound == null || upperBound.compareTo(from) >= 0);
+    }
+
+    /**
+     * Check whether the key may be stored in this table.
+     * @param key the key
+     * @param hash hash of the key obtained by {@link BloomFilter#hash(ByteBuffer)}
+     * @return false if the key is definitely absent
+     */
+    boolean mightContain(
+            @NotNull final ByteBuffer key,
+            final long hash) {
+        if (!overlaps(key, key)) {
+            return false;
+        }
+        final BloomFilter bloomFilter = filter();
+        return bloomFilter == null || bloomFilter.mightContain(hash);
     }
 
     @NotNull
     @Override
     public Iterator<Cell> iterator(@NotNull final ByteBuffer from) throws IOException {
-        return new Iterator<>() {
-            int next = position(from);
+        final TableReader tableReader = reader();
+        return tableReader.iterator(tableReader.position(from));
+    }
 
-            @Override
-            public boolean hasNext() {
-                return next < rows;
-            }
+    @NotNull
+    @Override
+    public Iterator<Cell> iterator(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean descending) throws IOException {
+        final TableReader tableReader = reader();
+        final int start = tableReader.position(from);
+        final int end = to == null ? tableReader.rows() : tableReader.position(to);
+        if (start >= end) {
+            return Iters.empty();
+        }
+        return Iterators.limit(
+                descending ? tableReader.descendingIterator(end - 1) : tableReader.iterator(start),
+                end - start);
+    }
 
-            @Override
-            public Cell next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("FileTable iterator has not next element");
-                }
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) throws IOException {
+        return reader().get(key);
+    }
 
-                try {
-                    return cellAt(next++);
-                } catch (IOException e) {
-                    throw new CellReadRuntimeException("Unable to read cell at position " + next, e);
+    /**
+     * Look up cells with exactly given keys in a single forward pass over the table.
+     * @param keys keys to look for in ascending order
+     * @return value or tombstone of every key at its index, null for keys without a cell
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    Value[] getAll(@NotNull final List<ByteBuffer> keys) throws IOException {
+        return reader().getAll(keys);
+    }
+
+    /**
+     * Get number of rows, which opens the table.
+     * @return number of cells
+     * @throws IOException if read is failed
+     */
+    int rows() throws IOException {
+        return reader().rows();
+    }
+
+    /**
+     * Sample keys which split the table into parts of about equal size.
+     * @return keys in ascending order, empty if the table is too small to split it
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    List<ByteBuffer> samples() throws IOException {
+        return reader().samples();
+    }
+
+    @NotNull
+    RangeTombstones rangeTombstones() {
+        return rangeTombstones;
+    }
+
+    /**
+     * Get timestamp of the freshest cell of the table.
+     * @return the timestamp or {@link Long#MAX_VALUE} if the table doesn't store it
+     */
+    long maxTimeStamp() {
+        return maxTimeStamp;
+    }
+
+    /**
+     * Take a reference which keeps the file open until {@link #release()}.
+     * @return false if the table is already closed
+     */
+    boolean acquire() {
+        while (true) {
+            final int current = refs.get();
+            if (current == 0) {
+                return false;
+            }
+            if (refs.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drop a reference and close the file once no references are left.
+     * @throws IOException if close of the file is failed
+     */
+    void release() throws IOException {
+        while (true) {
+            final int current = refs.get();
+            if (current == 0) {
+                return;
+            }
+            if (refs.compareAndSet(current, current - 1)) {
+                if (current == 1) {
+                    closeSource();
                 }
+                return;
             }
-        };
+        }
     }
 
+    boolean isReleased() {
+        return refs.get() == 0;
+    }
+
+    /**
+     * Close the file regardless of references held by iterators.
+     * @throws IOException if close of the file is failed
+     */
     @Override
     public void close() throws IOException {
-        if (fileChannel != null) {
-            fileChannel.close();
+        if (refs.getAndSet(0) > 0) {
+            closeSource();
+        }
+    }
+
+    private void closeSource() throws IOException {
+        final FileSource opened;
+        synchronized (this) {
+            opened = source;
+        }
+        if (opened != null) {
+            opened.close();
+        }
+        if (cache != null) {
+            cache.invalidate(generation);
         }
     }
 }
@@ -0,0 +1,43 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Merges every SSTable into one as soon as there are too many of them.
+ */
+public final class FullCompactionStrategy implements CompactionStrategy {
+    private final int maxTables;
+
+    /**
+     * Strategy of full compactions.
+     * @param maxTables number of tables which is still tolerated
+     */
+    public FullCompactionStrategy(final int maxTables) {
+        if (maxTables <= 0) {
+            throw new IllegalArgumentException("Tables limit should be positive: " + maxTables);
+        }
+        this.maxTables = maxTables;
+    }
+
+    @Nullable
+    @Override
+    public Compaction pick(@NotNull final List<FileTable> tables) {
+        return tables.size() > maxTables ? new Compaction(tables, 0, Long.MAX_VALUE, true) : null;
+    }
+
+    /**
+     * Merge every table, in parallel into at most half of tolerated tables,
+     * so flushes don't trigger the next full compaction right away.
+     */
+    @Nullable
+    @Override
+    public Compaction major(@NotNull final List<FileTable> tables) {
+        if (tables.isEmpty()) {
+            return null;
+        }
+        return new Compaction(tables, 0, Long.MAX_VALUE, true, Math.max(1, maxTables / 2));
+    }
+}
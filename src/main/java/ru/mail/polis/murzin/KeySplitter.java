@@ -0,0 +1,60 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the key space of SSTables into ranges holding about the same number of bytes,
+ * which are merged independently by a parallel compaction.
+ */
+final class KeySplitter {
+    private KeySplitter() {
+    }
+
+    /**
+     * Choose keys between the ranges by samples of the tables, every sample is weighted by the bytes
+     * of its table preceding it since the previous sample.
+     * @param tables tables to split
+     * @param parts number of ranges to aim for
+     * @return less than parts keys in ascending order, the first range starts at the least key
+     *     and the last one is unbounded
+     * @throws IOException if read of samples is failed
+     */
+    @NotNull
+    static List<ByteBuffer> split(
+            @NotNull final List<FileTable> tables,
+            final int parts) throws IOException {
+        final List<Map.Entry<ByteBuffer, Long>> samples = new ArrayList<>();
+        long total = 0;
+        for (final FileTable table : tables) {
+            final List<ByteBuffer> keys = table.samples();
+            final long weight = table.sizeInBytes() / (keys.size() + 1);
+            for (final ByteBuffer key : keys) {
+                samples.add(Map.entry(key, weight));
+            }
+            total += table.sizeInBytes();
+        }
+        samples.sort(Map.Entry.comparingByKey(Comparator.naturalOrder()));
+
+        final List<ByteBuffer> result = new ArrayList<>(parts - 1);
+        long weight = 0;
+        for (final Map.Entry<ByteBuffer, Long> sample : samples) {
+            if (result.size() == parts - 1) {
+                break;
+            }
+            // Weight of a sample is of bytes before its key, which go to the previous range
+            weight += sample.getValue();
+            if (weight >= total * (result.size() + 1) / parts
+                    && (result.isEmpty() || sample.getKey().compareTo(result.get(result.size() - 1)) > 0)) {
+                result.add(sample.getKey());
+            }
+        }
+        return result;
+    }
+}
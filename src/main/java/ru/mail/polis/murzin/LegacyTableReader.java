@@ -0,0 +1,190 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reader of the original format: cells followed by offset of every row and the number of rows.
+ */
+final class LegacyTableReader implements TableReader {
+    // Keys are read one by one, so only some of them are sampled
+    private static final int MAX_SAMPLES = 1024;
+
+    private final FileSource source;
+    private final int rows;
+    private final LongBuffer offsets;
+
+    LegacyTableReader(@NotNull final FileSource source) throws IOException {
+        this.source = source;
+
+        // Rows
+        long offset = source.size() - Long.BYTES;
+        final long rowsValue = source.readLong(offset);
+        assert rowsValue <= Integer.MAX_VALUE;
+        this.rows = (int) rowsValue;
+
+        // Offsets
+        offset -= (long) Long.BYTES * rows;
+        this.offsets = source.read(offset, Long.BYTES * rows).asLongBuffer();
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public long maxTimeStamp() {
+        return Long.MAX_VALUE;
+    }
+
+    @NotNull
+    @Override
+    public List<RangeTombstone> rangeTombstones() {
+        return Collections.emptyList();
+    }
+
+    private ByteBuffer keyAt(final int i) throws IOException {
+        assert 0 <= i && i < rows;
+        final long offset = offsets.get(i);
+        final int keySize = source.readInt(offset);
+
+        return source.read(offset + Integer.BYTES, keySize);
+    }
+
+    private Cell cellAt(final int i) throws IOException {
+        assert 0 <= i && i < rows;
+        long offset = offsets.get(i);
+
+        // Key
+        final int keySize = source.readInt(offset);
+        offset += Integer.BYTES;
+        final ByteBuffer key = source.read(offset, keySize);
+        offset += keySize;
+
+        // Timestamp
+        final long timeStamp = source.readLong(offset);
+        offset += Long.BYTES;
+
+        if (timeStamp < 0) {
+            return new Cell(key, new Value(-timeStamp, null));
+        } else {
+            final int valueSize = source.readInt(offset);
+            offset += Integer.BYTES;
+            final ByteBuffer value = source.read(offset, valueSize);
+            return new Cell(key, new Value(timeStamp, value));
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<ByteBuffer> samples() throws IOException {
+        final int count = Math.min(rows, MAX_SAMPLES);
+        final List<ByteBuffer> result = new ArrayList<>(Math.max(count - 1, 0));
+        for (int i = 1; i < count; i++) {
+            final ByteBuffer key = keyAt((int) ((long) rows * i / count));
+            result.add(ByteBuffer.allocate(key.remaining()).put(key).flip());
+        }
+        return result;
+    }
+
+    @Override
+    public int position(@NotNull final ByteBuffer key) throws IOException {
+        int left = 0;
+        int right = rows - 1;
+        while (left <= right) {
+            final int mid = left + ((right - left) >> 1);
+            final int cmp = key.compareTo(keyAt(mid));
+            if (cmp < 0) {
+                right = mid - 1;
+            } else if (cmp > 0) {
+                left = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return left;
+    }
+
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) throws IOException {
+        final int row = position(key);
+        if (row == rows) {
+            return null;
+        }
+        final Cell cell = cellAt(row);
+        return cell.getKey().equals(key) ? cell.getValue() : null;
+    }
+
+    @NotNull
+    @Override
+    public Value[] getAll(@NotNull final List<ByteBuffer> keys) throws IOException {
+        final Value[] result = new Value[keys.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = get(keys.get(i));
+        }
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> iterator(final int row) {
+        return new Iterator<>() {
+            int next = row;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public Cell next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("FileTable iterator has not next element");
+                }
+
+                try {
+                    return cellAt(next++);
+                } catch (IOException e) {
+                    throw new CellReadRuntimeException("Unable to read cell at position " + next, e);
+                }
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> descendingIterator(final int row) {
+        return new Iterator<>() {
+            int next = row;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Cell next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("FileTable iterator has not next element");
+                }
+
+                try {
+                    return cellAt(next--);
+                } catch (IOException e) {
+                    throw new CellReadRuntimeException("Unable to read cell at position " + next, e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps SSTables in levels of exponentially growing size.
+ *
+ * <p>Flushed tables form level 0 and may overlap. Tables of every deeper level have disjoint key ranges,
+ * so a point lookup probes at most one table per level. Once level 0 has too many tables they are merged
+ * with the overlapping tables of level 1, and once a deeper level outgrows its limit its oldest table
+ * is merged into the next level. Every compaction rewrites one table plus its overlap only.
+ */
+public final class LeveledCompactionStrategy implements CompactionStrategy {
+    private final int level0Tables;
+    private final long maxTableSize;
+    private final long level1Size;
+    private final int levelRatio;
+
+    /**
+     * Strategy of leveled compactions.
+     * @param level0Tables number of flushed tables which triggers their compaction into level 1
+     * @param maxTableSize size in bytes of tables in levels 1 and deeper
+     * @param level1Size size in bytes of level 1
+     * @param levelRatio how many times every next level is larger than the previous one
+     */
+    public LeveledCompactionStrategy(
+            final int level0Tables,
+            final long maxTableSize,
+            final long level1Size,
+            final int levelRatio) {
+        if (level0Tables <= 0 || maxTableSize <= 0 || level1Size <= 0 || levelRatio <= 1) {
+            throw new IllegalArgumentException("Invalid leveled compaction parameters");
+        }
+        this.level0Tables = level0Tables;
+        this.maxTableSize = maxTableSize;
+        this.level1Size = level1Size;
+        this.levelRatio = levelRatio;
+    }
+
+    /**
+     * Strategy of leveled compactions with 2 MB tables, 4 flushed tables, 10 MB level 1 and ratio 10.
+     */
+    public LeveledCompactionStrategy() {
+        this(4, 2L * 1024 * 1024, 10L * 1024 * 1024, 10);
+    }
+
+    @Nullable
+    @Override
+    public Compaction pick(@NotNull final List<FileTable> tables) {
+        final List<List<FileTable>> levels = levels(tables);
+
+        int level = -1;
+        double maxScore = 1.0;
+        double limit = level1Size;
+        for (int i = 0; i < levels.size(); i++) {
+            final double score;
+            if (i == 0) {
+                score = (double) levels.get(0).size() / level0Tables;
+            } else {
+                score = sizeOf(levels.get(i)) / limit;
+                limit *= levelRatio;
+            }
+            if (score >= maxScore) {
+                maxScore = score;
+                level = i;
+            }
+        }
+        if (level < 0) {
+            return null;
+        }
+
+        final List<FileTable> inputs = new ArrayList<>();
+        if (level == 0) {
+            inputs.addAll(levels.get(0));
+        } else {
+            inputs.add(levels.get(level).stream()
+                    .min(Comparator.comparingInt(FileTable::generation))
+                    .orElseThrow());
+        }
+        final int output = level + 1;
+        final ByteBuffer from = FileTable.lowerBound(inputs);
+        if (output < levels.size() && from != null) {
+            final ByteBuffer to = FileTable.upperBound(inputs);
+            for (final FileTable table : levels.get(output)) {
+                if (table.overlaps(from, to)) {
+                    inputs.add(table);
+                }
+            }
+        }
+        // Tables of a level are disjoint anyway, so the merge may be split into any number of key ranges
+        return new Compaction(inputs, output, maxTableSize, isBottom(levels, output, inputs), Integer.MAX_VALUE);
+    }
+
+    @Nullable
+    @Override
+    public Compaction major(@NotNull final List<FileTable> tables) {
+        if (tables.isEmpty()) {
+            return null;
+        }
+        int level = 1;
+        for (final FileTable table : tables) {
+            level = Math.max(level, table.level());
+        }
+        return new Compaction(tables, level, maxTableSize, true, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removals may be dropped only if no deeper level holds keys of the merged range,
+     * as shallower levels always have newer cells.
+     */
+    private static boolean isBottom(
+            @NotNull final List<List<FileTable>> levels,
+            final int output,
+            @NotNull final List<FileTable> inputs) {
+        final ByteBuffer from = FileTable.lowerBound(inputs);
+        if (from == null) {
+            return true;
+        }
+        final ByteBuffer to = FileTable.upperBound(inputs);
+        for (int i = output + 1; i < levels.size(); i++) {
+            for (final FileTable table : levels.get(i)) {
+                if (table.overlaps(from, to)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static List<List<FileTable>> levels(@NotNull final List<FileTable> tables) {
+        final List<List<FileTable>> levels = new ArrayList<>();
+        levels.add(new ArrayList<>());
+        for (final FileTable table : tables) {
+            while (levels.size() <= table.level()) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(table.level()).add(table);
+        }
+        return levels;
+    }
+
+    private static double sizeOf(@NotNull final List<FileTable> tables) {
+        long size = 0;
+        for (final FileTable table : tables) {
+            size += table.sizeInBytes();
+        }
+        return size;
+    }
+}
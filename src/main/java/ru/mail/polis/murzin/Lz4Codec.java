@@ -0,0 +1,189 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Greedy single-pass compressor and decompressor of LZ4 block format.
+ *
+ * <p>Data is a sequence of {@code [token][literals length][literals][offset][match length]},
+ * where the high nibble of the token is literals length, the low one is match length minus 4,
+ * and a nibble of 15 continues in following bytes of 255 until a smaller byte.
+ * The last sequence has literals only.
+ */
+final class Lz4Codec implements Codec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0xF;
+
+    // Compression runs on flusher and compactor threads, each reuses its hash table
+    private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    @Override
+    public int id() {
+        return 1;
+    }
+
+    @Override
+    public int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(
+            @NotNull final byte[] src,
+            final int srcOffset,
+            final int length,
+            @NotNull final byte[] dst,
+            final int dstOffset) {
+        final int end = srcOffset + length;
+        final int matchLimit = end - LAST_LITERALS;
+        final int[] table = HASH_TABLE.get();
+        Arrays.fill(table, -1);
+
+        int anchor = srcOffset;
+        int out = dstOffset;
+        int cursor = srcOffset;
+        while (cursor < end - MATCH_FIND_LIMIT) {
+            final int sequence = readInt(src, cursor);
+            final int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+            final int ref = table[hash];
+            table[hash] = cursor;
+            if (ref < 0 || cursor - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                cursor++;
+                continue;
+            }
+
+            int match = MIN_MATCH;
+            while (cursor + match < matchLimit && src[cursor + match] == src[ref + match]) {
+                match++;
+            }
+            out = writeSequence(src, anchor, cursor - anchor, dst, out, cursor - ref, match);
+            cursor += match;
+            anchor = cursor;
+        }
+        return writeLastLiterals(src, anchor, end - anchor, dst, out) - dstOffset;
+    }
+
+    private static int writeSequence(
+            final byte[] src,
+            final int literals,
+            final int literalsLength,
+            final byte[] dst,
+            final int offset,
+            final int distance,
+            final int match) {
+        int out = offset;
+        final int token = out++;
+        final int matchLength = match - MIN_MATCH;
+        dst[token] = (byte) ((Math.min(literalsLength, RUN_MASK) << 4) | Math.min(matchLength, RUN_MASK));
+        out = writeLength(dst, out, literalsLength);
+        System.arraycopy(src, literals, dst, out, literalsLength);
+        out += literalsLength;
+        dst[out++] = (byte) distance;
+        dst[out++] = (byte) (distance >>> 8);
+        return writeLength(dst, out, matchLength);
+    }
+
+    private static int writeLastLiterals(
+            final byte[] src,
+            final int literals,
+            final int literalsLength,
+            final byte[] dst,
+            final int offset) {
+        int out = offset;
+        dst[out++] = (byte) (Math.min(literalsLength, RUN_MASK) << 4);
+        out = writeLength(dst, out, literalsLength);
+        System.arraycopy(src, literals, dst, out, literalsLength);
+        return out + literalsLength;
+    }
+
+    private static int writeLength(
+            final byte[] dst,
+            final int offset,
+            final int length) {
+        if (length < RUN_MASK) {
+            return offset;
+        }
+        int out = offset;
+        int rest = length - RUN_MASK;
+        while (rest >= 255) {
+            dst[out++] = (byte) 255;
+            rest -= 255;
+        }
+        dst[out++] = (byte) rest;
+        return out;
+    }
+
+    private static int readInt(final byte[] src, final int offset) {
+        return (src[offset] & 0xFF)
+                | (src[offset + 1] & 0xFF) << 8
+                | (src[offset + 2] & 0xFF) << 16
+                | (src[offset + 3] & 0xFF) << 24;
+    }
+
+    @Override
+    public void decompress(
+            @NotNull final ByteBuffer src,
+            @NotNull final byte[] dst,
+            final int dstOffset,
+            final int length) throws IOException {
+        final int end = dstOffset + length;
+        int in = src.position();
+        final int limit = src.limit();
+        int out = dstOffset;
+        try {
+            while (true) {
+                final int token = src.get(in++) & 0xFF;
+                int literalsLength = token >>> 4;
+                if (literalsLength == RUN_MASK) {
+                    int extra;
+                    do {
+                        extra = src.get(in++) & 0xFF;
+                        literalsLength += extra;
+                    }
+                    while (extra == 255);
+                }
+                if (out + literalsLength > end) {
+                    throw new IOException("Corrupted block: literals overflow");
+                }
+                for (int i = 0; i < literalsLength; i++) {
+                    dst[out++] = src.get(in++);
+                }
+                if (in == limit) {
+                    break;
+                }
+
+                final int distance = (src.get(in++) & 0xFF) | (src.get(in++) & 0xFF) << 8;
+                int match = token & RUN_MASK;
+                if (match == RUN_MASK) {
+                    int extra;
+                    do {
+                        extra = src.get(in++) & 0xFF;
+                        match += extra;
+                    }
+                    while (extra == 255);
+                }
+                match += MIN_MATCH;
+                if (distance == 0 || out - distance < dstOffset || out + match > end) {
+                    throw new IOException("Corrupted block: bad match");
+                }
+                // Copied byte by byte as the match may overlap its own output
+                for (int ref = out - distance; match > 0; match--) {
+                    dst[out++] = dst[ref++];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted block: truncated", e);
+        }
+        if (out != end) {
+            throw new IOException("Corrupted block: " + (out - dstOffset) + " bytes instead of " + length);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of edits of the SSTable set, which keeps metadata of live tables,
+ * so they are known without walking the directory and opened only when they are read.
+ *
+ * <p>File starts with {@code [magic][version]} followed by records {@code [length][crc32][edit]}.
+ * Edit is {@code [generation][removed count]{[generation]}[added count]{[table]}},
+ * where the first generation is the latest one allocated so far and table is
+ * {@code [generation][level][size][max timestamp][lower size or -1 if empty][lower]
+ * [upper size or -1 if unbounded][upper][tombstones count]{[from size][from][to size or -1][to][timestamp]}}.
+ * An edit is applied either whole or not at all. The log is rewritten as a single edit of live tables
+ * once it outgrows them and on close, so a closed manifest holds a single edit.
+ */
+final class Manifest implements Closeable {
+    private static final String NAME = "MANIFEST";
+    private static final String TEMP = ".tmp";
+    private static final long MAGIC = 0x4C534D4D414E4946L;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = Long.BYTES + Integer.BYTES;
+    private static final int HEADER = Integer.BYTES * 2;
+    private static final long MIN_REWRITE_SIZE = 1024 * 1024;
+    // The log is rewritten once it is that many times larger than its last rewrite
+    private static final int MAX_GROWTH = 4;
+
+    private final File base;
+    private final boolean sync;
+    // Metadata of live tables by generation
+    private final Map<Integer, FileTable> live = new TreeMap<>();
+    private int generation;
+    private FileChannel channel;
+    private long size;
+    private long rewrittenSize;
+    private int edits;
+    // Set once an append is failed, so the log may end with a record which is not applied
+    private boolean torn;
+
+    private Manifest(
+            @NotNull final File base,
+            final boolean sync) {
+        this.base = base;
+        this.sync = sync;
+    }
+
+    static boolean exists(@NotNull final File base) {
+        return new File(base, NAME).exists();
+    }
+
+    /**
+     * Start the manifest of tables which are already known.
+     * @param base path to working directory
+     * @param generation latest generation allocated so far
+     * @param tables live tables
+     * @param sync whether every edit is forced to disk
+     * @return manifest to record edits in
+     * @throws IOException if write of the manifest is failed
+     */
+    @NotNull
+    static Manifest create(
+            @NotNull final File base,
+            final int generation,
+            @NotNull final Collection<FileTable> tables,
+            final boolean sync) throws IOException {
+        final Manifest manifest = new Manifest(base, sync);
+        manifest.generation = generation;
+        for (final FileTable table : tables) {
+            manifest.live.put(table.generation(), table);
+        }
+        manifest.rewrite(generation, manifest.live.values());
+        return manifest;
+    }
+
+    /**
+     * Replay edits of the manifest in working directory, which is rewritten then unless it holds a single edit.
+     * Replay stops at a torn last edit, while a corrupted edit followed by others fails it.
+     * The first edit is never torn, as the log is started by a rename of a complete file.
+     * @param base path to working directory
+     * @param fileOf file of the table by its generation
+     * @param mapped whether to map files of tables into memory
+     * @param cache cache of blocks shared by tables or null to read blocks every time
+     * @param sync whether every edit is forced to disk
+     * @return manifest with live tables, which are not opened yet
+     * @throws IOException if the manifest can`t be read or is corrupted
+     */
+    @NotNull
+    static Manifest open(
+            @NotNull final File base,
+            @NotNull final IntFunction<File> fileOf,
+            final boolean mapped,
+            @Nullable final BlockCache cache,
+            final boolean sync) throws IOException {
+        final Manifest manifest = new Manifest(base, sync);
+        final File file = new File(base, NAME);
+        long offset = FILE_HEADER;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = fc.size();
+            final ByteBuffer fileHeader = read(fc, 0, FILE_HEADER, file);
+            if (fileHeader.getLong() != MAGIC) {
+                throw new IOException("Not a manifest " + file);
+            }
+            final int version = fileHeader.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported manifest version " + version);
+            }
+
+            while (offset + HEADER <= fileSize) {
+                final ByteBuffer header = read(fc, offset, HEADER, file);
+                final int length = header.getInt();
+                final int checksum = header.getInt();
+                final boolean first = manifest.edits == 0;
+                if (length < Integer.BYTES || offset + HEADER + length > fileSize) {
+                    if (first) {
+                        throw new IOException("Corrupted manifest " + file + " at offset " + offset);
+                    }
+                    break;
+                }
+                final ByteBuffer edit = read(fc, offset + HEADER, length, file);
+                final CRC32 check = new CRC32();
+                check.update(edit.duplicate());
+                if ((int) check.getValue() != checksum) {
+                    if (!first && offset + HEADER + length == fileSize) {
+                        break;
+                    }
+                    throw new IOException("Corrupted manifest " + file + " at offset " + offset);
+                }
+                manifest.apply(edit, fileOf, mapped, cache);
+                manifest.edits++;
+                offset += HEADER + length;
+            }
+        }
+        if (manifest.edits == 1 && offset == file.length()) {
+            manifest.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            manifest.size = offset;
+            manifest.rewrittenSize = offset;
+            manifest.edits = 0;
+        } else {
+            manifest.rewrite(manifest.generation, manifest.live.values());
+        }
+        return manifest;
+    }
+
+    private static ByteBuffer read(
+            @NotNull final FileChannel fc,
+            final long offset,
+            final int length,
+            @NotNull final File file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Truncated manifest " + file);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void apply(
+            @NotNull final ByteBuffer edit,
+            @NotNull final IntFunction<File> fileOf,
+            final boolean mapped,
+            @Nullable final BlockCache cache) {
+        generation = Math.max(generation, edit.getInt());
+        final int removed = edit.getInt();
+        for (int i = 0; i < removed; i++) {
+            live.remove(edit.getInt());
+        }
+        final int added = edit.getInt();
+        for (int i = 0; i < added; i++) {
+            final int tableGeneration = edit.getInt();
+            final int level = edit.getInt();
+            final long tableSize = edit.getLong();
+            final long maxTimeStamp = edit.getLong();
+            final ByteBuffer lower = copyOf(edit, edit.getInt());
+            final ByteBuffer upper = copyOf(edit, edit.getInt());
+            final int count = edit.getInt();
+            final List<RangeTombstone> tombstones = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                final ByteBuffer from = copyOf(edit, edit.getInt());
+                final ByteBuffer to = copyOf(edit, edit.getInt());
+                tombstones.add(new RangeTombstone(from, to, edit.getLong()));
+            }
+            live.put(tableGeneration, new FileTable(
+                    fileOf.apply(tableGeneration),
+                    tableGeneration,
+                    level,
+                    tableSize,
+                    lower,
+                    upper,
+                    maxTimeStamp,
+                    RangeTombstones.of(tombstones),
+                    mapped,
+                    cache));
+        }
+    }
+
+    @Nullable
+    private static ByteBuffer copyOf(
+            @NotNull final ByteBuffer edit,
+            final int size) {
+        if (size < 0) {
+            return null;
+        }
+        final ByteBuffer result = ByteBuffer.allocate(size);
+        result.put(edit.duplicate().limit(edit.position() + size)).flip();
+        edit.position(edit.position() + size);
+        return result;
+    }
+
+    /**
+     * Get live tables recorded by the manifest.
+     * @return tables in ascending order of generations
+     */
+    @NotNull
+    synchronized List<FileTable> tables() {
+        return new ArrayList<>(live.values());
+    }
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * Record replacement of tables, which is durable once it returns.
+     * Live tables are changed only once the edit is written, so they are left as they were if it is failed.
+     * @param removed tables which are not live anymore
+     * @param added new live tables
+     * @throws IOException if write of the edit is failed
+     */
+    synchronized void edit(
+            @NotNull final Collection<FileTable> removed,
+            @NotNull final Collection<FileTable> added) throws IOException {
+        int nextGeneration = generation;
+        for (final FileTable table : added) {
+            nextGeneration = Math.max(nextGeneration, table.generation());
+        }
+        try {
+            if (torn || size > Math.max(MIN_REWRITE_SIZE, rewrittenSize * MAX_GROWTH)) {
+                final Map<Integer, FileTable> next = new TreeMap<>(live);
+                replace(next, removed, added);
+                rewrite(nextGeneration, next.values());
+            } else {
+                size += append(channel, nextGeneration, removed, added);
+                if (sync) {
+                    channel.force(false);
+                }
+                edits++;
+            }
+        } catch (IOException e) {
+            // The record may be written partially or even whole, so the log is replaced by live tables next time
+            torn = true;
+            throw e;
+        }
+        replace(live, removed, added);
+        generation = nextGeneration;
+    }
+
+    private static void replace(
+            @NotNull final Map<Integer, FileTable> tables,
+            @NotNull final Collection<FileTable> removed,
+            @NotNull final Collection<FileTable> added) {
+        for (final FileTable table : removed) {
+            tables.remove(table.generation());
+        }
+        for (final FileTable table : added) {
+            tables.put(table.generation(), table);
+        }
+    }
+
+    /**
+     * Replace the log with a single edit of the tables.
+     * @param latest latest generation allocated so far
+     * @param tables live tables
+     */
+    private void rewrite(
+            final int latest,
+            @NotNull final Collection<FileTable> tables) throws IOException {
+        final File tmp = new File(base, NAME + TEMP);
+        long written = FILE_HEADER;
+        try (FileChannel fc = FileChannel.open(
+                tmp.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER);
+            fileHeader.putLong(MAGIC).putInt(VERSION).flip();
+            write(fc, fileHeader);
+            written += append(fc, latest, Collections.emptyList(), tables);
+            if (sync) {
+                fc.force(true);
+            }
+        }
+        closeChannel();
+        Files.move(tmp.toPath(), new File(base, NAME).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(new File(base, NAME).toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = written;
+        rewrittenSize = written;
+        edits = 0;
+        torn = false;
+    }
+
+    private static long append(
+            @NotNull final FileChannel fc,
+            final int latest,
+            @NotNull final Collection<FileTable> removed,
+            @NotNull final Collection<FileTable> added) throws IOException {
+        int length = Integer.BYTES * 3 + Integer.BYTES * removed.size();
+        for (final FileTable table : added) {
+            length += sizeOf(table);
+        }
+        final ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.position(HEADER);
+        record.putInt(latest);
+        record.putInt(removed.size());
+        for (final FileTable table : removed) {
+            record.putInt(table.generation());
+        }
+        record.putInt(added.size());
+        for (final FileTable table : added) {
+            encode(record, table);
+        }
+        record.flip();
+
+        final CRC32 crc = new CRC32();
+        crc.update(record.duplicate().position(HEADER));
+        record.putInt(0, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        write(fc, record);
+        return HEADER + length;
+    }
+
+    private static int sizeOf(@NotNull final FileTable table) {
+        int result = Integer.BYTES * 2 + Long.BYTES * 2 + sizeOf(table.lowerBound()) + sizeOf(table.upperBound())
+                + Integer.BYTES;
+        for (final RangeTombstone tombstone : table.rangeTombstones().fragments()) {
+            result += sizeOf(tombstone.from()) + sizeOf(tombstone.to()) + Long.BYTES;
+        }
+        return result;
+    }
+
+    private static int sizeOf(@Nullable final ByteBuffer key) {
+        return Integer.BYTES + (key == null ? 0 : key.remaining());
+    }
+
+    private static void encode(
+            @NotNull final ByteBuffer record,
+            @NotNull final FileTable table) {
+        record.putInt(table.generation());
+        record.putInt(table.level());
+        record.putLong(table.sizeInBytes());
+        record.putLong(table.maxTimeStamp());
+        encode(record, table.lowerBound());
+        // Empty tables have no upper bound either, which is told apart by the lower one
+        encode(record, table.isEmpty() ? null : table.upperBound());
+        final List<RangeTombstone> tombstones = table.rangeTombstones().fragments();
+        record.putInt(tombstones.size());
+        for (final RangeTombstone tombstone : tombstones) {
+            encode(record, tombstone.from());
+            encode(record, tombstone.to());
+            record.putLong(tombstone.timeStamp());
+        }
+    }
+
+    private static void encode(
+            @NotNull final ByteBuffer record,
+            @Nullable final ByteBuffer key) {
+        if (key == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(key.remaining());
+            record.put(key);
+        }
+    }
+
+    private static void write(
+            @NotNull final FileChannel fc,
+            @NotNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            fc.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (edits > 0 || torn) {
+            rewrite(generation, live.values());
+        }
+        closeChannel();
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
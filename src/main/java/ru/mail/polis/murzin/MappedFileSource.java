@@ -0,0 +1,96 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File source which maps the whole file once and serves reads as zero-copy slices.
+ *
+ * <p>A single mapping can't exceed 2 GB, so larger files are mapped by chunks.
+ * Only the rare read which straddles a chunk boundary is copied.
+ * Mappings are released by GC: returned slices may outlive {@link #close()}.
+ */
+final class MappedFileSource implements FileSource {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    MappedFileSource(@NotNull final File file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.size = fc.size();
+            this.chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long start = (long) i << CHUNK_BITS;
+                chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int readInt(final long offset) throws IOException {
+        final int position = (int) (offset & (CHUNK_SIZE - 1));
+        if (position + Integer.BYTES <= CHUNK_SIZE) {
+            return chunkOf(offset).getInt(position);
+        }
+        return read(offset, Integer.BYTES).getInt();
+    }
+
+    @Override
+    public long readLong(final long offset) throws IOException {
+        final int position = (int) (offset & (CHUNK_SIZE - 1));
+        if (position + Long.BYTES <= CHUNK_SIZE) {
+            return chunkOf(offset).getLong(position);
+        }
+        return read(offset, Long.BYTES).getLong();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer read(final long offset, final int length) throws IOException {
+        if (offset < 0 || offset + length > size) {
+            throw new IOException("Read of " + length + " bytes at " + offset + " is out of file bounds");
+        }
+
+        final int position = (int) (offset & (CHUNK_SIZE - 1));
+        if (position + length <= CHUNK_SIZE) {
+            return chunkOf(offset).duplicate()
+                    .position(position)
+                    .limit(position + length)
+                    .slice();
+        }
+
+        // Straddles chunks
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        long current = offset;
+        while (result.hasRemaining()) {
+            final int start = (int) (current & (CHUNK_SIZE - 1));
+            final ByteBuffer chunk = chunkOf(current).duplicate().position(start);
+            chunk.limit(Math.min(chunk.limit(), start + result.remaining()));
+            current += chunk.remaining();
+            result.put(chunk);
+        }
+        return result.rewind();
+    }
+
+    private ByteBuffer chunkOf(final long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)];
+    }
+
+    @Override
+    public void close() {
+        // Unmapping is left to GC since slices handed to readers still point into the mappings
+    }
+}
@@ -1,47 +1,303 @@
 package ru.mail.polis.murzin;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import ru.mail.polis.Iters;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sorted in-memory table, which may keep several versions of a key for snapshots.
+ * Versions of a key are ordered from the freshest one.
+ * Range tombstones are kept aside and applied by readers. They are kept split into disjoint fragments too,
+ * so the latest removal of a key is found by a single lookup and snapshots see whole tombstones.
+ */
 public class MemTable implements Table {
-    private final SortedMap<ByteBuffer, Value> map = new TreeMap<>();
-    private long sizeInBytes;
+    private final NavigableSet<Cell> cells = new ConcurrentSkipListSet<>(Cell.COMPARATOR);
+    private final Collection<RangeTombstone> rangeTombstones = new ConcurrentLinkedQueue<>();
+    // Fragments of range tombstones by their least keys, which are changed under the lock of the map
+    private final ConcurrentNavigableMap<ByteBuffer, RangeTombstone> fragments = new ConcurrentSkipListMap<>();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    // Fragments taken by iterators, dropped by every range removal
+    private volatile RangeTombstones latest = RangeTombstones.EMPTY;
+    private long maxRangeTimeStamp;
 
     long sizeInBytes() {
-        return sizeInBytes;
+        return sizeInBytes.get();
+    }
+
+    /**
+     * Get number of cells, which walks all of them.
+     * @return number of cells including older versions of keys
+     */
+    int rows() {
+        return cells.size();
     }
 
     @NotNull
     @Override
     public Iterator<Cell> iterator(@NotNull final ByteBuffer from) {
-        return Iterators.transform(
-                map.tailMap(from).entrySet().iterator(),
-                e -> new Cell(e.getKey(), e.getValue()));
+        return iterator(from, null, false, Long.MAX_VALUE);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> iterator(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean descending) {
+        return iterator(from, to, descending, Long.MAX_VALUE);
+    }
+
+    /**
+     * Iterate over the freshest versions not newer than given timestamp within the range.
+     * @param from least key of the range (inclusive)
+     * @param to key following the range (exclusive) or null if the range is unbounded
+     * @param descending whether to start from the greatest key
+     * @param timeStamp greatest timestamp of visible versions
+     * @return cells in ascending or descending order of keys
+     */
+    @NotNull
+    Iterator<Cell> iterator(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean descending,
+            final long timeStamp) {
+        if (to != null && from.compareTo(to) >= 0) {
+            return Iters.empty();
+        }
+        // Probes with the greatest timestamp precede every version of their keys
+        final NavigableSet<Cell> range = to == null
+                ? cells.tailSet(probe(from, Long.MAX_VALUE), true)
+                : cells.subSet(probe(from, Long.MAX_VALUE), true, probe(to, Long.MAX_VALUE), false);
+        final Iterator<Cell> versions = descending ? range.descendingIterator() : range.iterator();
+        final Iterator<Cell> visible = timeStamp == Long.MAX_VALUE
+                ? versions
+                : Iterators.filter(versions, cell -> cell.getValue().getTimeStamp() <= timeStamp);
+        return descending ? new LastOfKeyIterator(visible) : Iters.collapseEquals(visible, Cell::getKey);
+    }
+
+    @Nullable
+    @Override
+    public Value get(@NotNull final ByteBuffer key) {
+        return get(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Get the freshest version not newer than given timestamp.
+     * @param key key to look for
+     * @param timeStamp greatest timestamp of visible versions
+     * @return value or tombstone of the key, null if there is no visible version
+     */
+    @Nullable
+    Value get(
+            @NotNull final ByteBuffer key,
+            final long timeStamp) {
+        final Cell cell = cells.ceiling(probe(key, timeStamp));
+        return cell == null || !cell.getKey().equals(key) ? null : cell.getValue();
+    }
+
+    /**
+     * Put the value, which may be called concurrently.
+     * @param key key of the value
+     * @param value value or tombstone
+     * @param retain whether to keep older versions of the key for snapshots
+     */
+    void put(
+            @NotNull final ByteBuffer key,
+            @NotNull final Value value,
+            final boolean retain) {
+        final Cell cell = new Cell(key.duplicate(), value);
+        // The same version may be put again, e.g. by replay of the commit log
+        if (cells.add(cell)) {
+            sizeInBytes.addAndGet(sizeOf(cell));
+        }
+        if (retain) {
+            return;
+        }
+
+        // Nobody is able to read older versions
+        final Iterator<Cell> older = cells.tailSet(cell, false).iterator();
+        while (older.hasNext()) {
+            final Cell previous = older.next();
+            if (!previous.getKey().equals(key)) {
+                break;
+            }
+            if (cells.remove(previous)) {
+                sizeInBytes.addAndGet(-sizeOf(previous));
+            }
+        }
+    }
+
+    /**
+     * Remove every key of the range written before the tombstone, which may be called concurrently.
+     * @param tombstone the tombstone
+     */
+    void removeRange(@NotNull final RangeTombstone tombstone) {
+        synchronized (fragments) {
+            rangeTombstones.add(tombstone);
+            addFragments(tombstone);
+            maxRangeTimeStamp = Math.max(maxRangeTimeStamp, tombstone.timeStamp());
+            latest = null;
+        }
+        sizeInBytes.addAndGet(tombstone.sizeInBytes());
+    }
+
+    /**
+     * Split fragments at bounds of the tombstone and raise timestamps of fragments within it.
+     * Every fragment is replaced by a single put, so concurrent readers see either the old or the new one.
+     */
+    private void addFragments(@NotNull final RangeTombstone tombstone) {
+        final ByteBuffer from = tombstone.from();
+        final ByteBuffer to = tombstone.to();
+        split(from);
+        if (to != null) {
+            split(to);
+        }
+
+        final Map<ByteBuffer, RangeTombstone> within = to == null
+                ? fragments.tailMap(from, true)
+                : fragments.subMap(from, true, to, false);
+        final List<RangeTombstone> covered = new ArrayList<>(within.values());
+        ByteBuffer gap = from;
+        for (final RangeTombstone fragment : covered) {
+            if (gap.compareTo(fragment.from()) < 0) {
+                fragments.put(gap, new RangeTombstone(gap, fragment.from(), tombstone.timeStamp()));
+            }
+            if (fragment.timeStamp() < tombstone.timeStamp()) {
+                fragments.put(
+                        fragment.from(),
+                        new RangeTombstone(fragment.from(), fragment.to(), tombstone.timeStamp()));
+            }
+            gap = fragment.to();
+            if (gap == null) {
+                return;
+            }
+        }
+        if (to == null || gap.compareTo(to) < 0) {
+            fragments.put(gap, new RangeTombstone(gap, to, tombstone.timeStamp()));
+        }
+    }
+
+    /**
+     * Split the fragment containing the key, so a fragment starts at the key.
+     */
+    private void split(@NotNull final ByteBuffer key) {
+        final Map.Entry<ByteBuffer, RangeTombstone> entry = fragments.lowerEntry(key);
+        if (entry == null || !entry.getValue().contains(key)) {
+            return;
+        }
+        final RangeTombstone fragment = entry.getValue();
+        // The right part goes first, so the key stays covered meanwhile
+        fragments.put(key, new RangeTombstone(key, fragment.to(), fragment.timeStamp()));
+        fragments.put(fragment.from(), new RangeTombstone(fragment.from(), key, fragment.timeStamp()));
+    }
+
+    /**
+     * Get range tombstones not newer than given timestamp.
+     * @param timeStamp greatest timestamp of visible tombstones
+     * @return fragments of the tombstones
+     */
+    @NotNull
+    RangeTombstones rangeTombstones(final long timeStamp) {
+        final RangeTombstones current = latest;
+        if (timeStamp == Long.MAX_VALUE && current != null) {
+            return current;
+        }
+        synchronized (fragments) {
+            // Snapshots taken after the latest removal see every tombstone too
+            if (timeStamp >= maxRangeTimeStamp) {
+                if (latest == null) {
+                    latest = RangeTombstones.ofFragments(fragments.values());
+                }
+                return latest;
+            }
+        }
+        final List<RangeTombstone> visible = new ArrayList<>();
+        for (final RangeTombstone tombstone : rangeTombstones) {
+            if (tombstone.timeStamp() <= timeStamp) {
+                visible.add(tombstone);
+            }
+        }
+        return RangeTombstones.of(visible);
     }
 
-    void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) {
-        final Value previous = map.put(key.duplicate(), Value.of(value.duplicate()));
-        if (previous == null) {
-            sizeInBytes += key.remaining() + value.remaining() + Long.BYTES;
-        } else if (previous.isRemoved()) {
-            sizeInBytes += value.remaining();
-        } else {
-            sizeInBytes += value.remaining() - previous.getData().remaining();
+    /**
+     * Get time of the latest range removal of the key not newer than given timestamp.
+     * @param key the key
+     * @param timeStamp greatest timestamp of visible tombstones
+     * @return timestamp of the tombstone, 0 if there is none
+     */
+    long rangeTimeStampOf(
+            @NotNull final ByteBuffer key,
+            final long timeStamp) {
+        final Map.Entry<ByteBuffer, RangeTombstone> entry = fragments.floorEntry(key);
+        if (entry == null || !entry.getValue().contains(key)) {
+            return 0;
+        }
+        final long latestTimeStamp = entry.getValue().timeStamp();
+        if (latestTimeStamp <= timeStamp) {
+            return latestTimeStamp;
+        }
+
+        // The key is removed after the snapshot, so older tombstones are looked through
+        long result = 0;
+        for (final RangeTombstone tombstone : rangeTombstones) {
+            if (tombstone.timeStamp() <= timeStamp && tombstone.timeStamp() > result && tombstone.contains(key)) {
+                result = tombstone.timeStamp();
+            }
         }
+        return result;
     }
 
-    void remove(@NotNull final ByteBuffer key) {
-        final Value previous = map.put(key.duplicate(), Value.tombstone());
-        if (previous == null) {
-            sizeInBytes += key.remaining() + Long.BYTES;
-        } else if (!previous.isRemoved()) {
-            sizeInBytes -= previous.getData().remaining();
+    /**
+     * Keeps the last version of every key, which is the freshest one when versions go in reverse.
+     */
+    private static final class LastOfKeyIterator implements Iterator<Cell> {
+        private final PeekingIterator<Cell> iterator;
+
+        LastOfKeyIterator(@NotNull final Iterator<Cell> iterator) {
+            this.iterator = Iterators.peekingIterator(iterator);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
         }
+
+        @Override
+        public Cell next() {
+            Cell result = iterator.next();
+            while (iterator.hasNext() && iterator.peek().getKey().equals(result.getKey())) {
+                result = iterator.next();
+            }
+            return result;
+        }
+    }
+
+    private static long sizeOf(@NotNull final Cell cell) {
+        final Value value = cell.getValue();
+        return cell.getKey().remaining() + Long.BYTES + (value.isRemoved() ? 0 : value.getData().remaining());
+    }
+
+    private static Cell probe(
+            @NotNull final ByteBuffer key,
+            final long timeStamp) {
+        return new Cell(key, new Value(timeStamp, null));
     }
-}
\ No newline at end of file
+}
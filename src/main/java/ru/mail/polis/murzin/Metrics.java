@@ -0,0 +1,88 @@
+package ru.mail.polis.murzin;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of a DAO since it was opened, which are updated concurrently.
+ * Durations are recorded in nanoseconds and reported in microseconds.
+ */
+final class Metrics {
+    // Precision of histograms is traded for their footprint
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    final Histogram gets = histogram();
+    final Histogram getAlls = histogram();
+    final Histogram ranges = histogram();
+    final Histogram upserts = histogram();
+    final Histogram removes = histogram();
+    final Histogram rangeRemovals = histogram();
+    final Histogram batches = histogram();
+    final Histogram flushes = histogram();
+    final Histogram compactions = histogram();
+    // SSTables read by a point lookup after Bloom filters, i.e. read amplification
+    final Histogram tablesPerGet = histogram();
+    final LongAdder userBytes = new LongAdder();
+    final LongAdder flushedBytes = new LongAdder();
+    final LongAdder compactionBytesRead = new LongAdder();
+    final LongAdder compactionBytesWritten = new LongAdder();
+
+    private static Histogram histogram() {
+        return new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+    }
+
+    static void recordSince(
+            @NotNull final Histogram histogram,
+            final long start) {
+        histogram.recordValue(System.nanoTime() - start);
+    }
+
+    /**
+     * Put count and percentiles of durations into the stats.
+     * @param stats stats to fill
+     * @param name prefix of the names
+     * @param histogram durations in nanoseconds
+     */
+    static void putDurations(
+            @NotNull final Map<String, Number> stats,
+            @NotNull final String name,
+            @NotNull final Histogram histogram) {
+        stats.put(name + ".count", histogram.getTotalCount());
+        stats.put(name + ".mean.us", histogram.getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+        stats.put(name + ".p50.us", micros(histogram.getValueAtPercentile(50)));
+        stats.put(name + ".p95.us", micros(histogram.getValueAtPercentile(95)));
+        stats.put(name + ".p99.us", micros(histogram.getValueAtPercentile(99)));
+        stats.put(name + ".p999.us", micros(histogram.getValueAtPercentile(99.9)));
+        stats.put(name + ".max.us", micros(histogram.getMaxValue()));
+    }
+
+    /**
+     * Put mean and percentiles of counts into the stats.
+     * @param stats stats to fill
+     * @param name prefix of the names
+     * @param histogram the counts
+     */
+    static void putCounts(
+            @NotNull final Map<String, Number> stats,
+            @NotNull final String name,
+            @NotNull final Histogram histogram) {
+        stats.put(name + ".mean", histogram.getMean());
+        stats.put(name + ".p99", histogram.getValueAtPercentile(99));
+        stats.put(name + ".max", histogram.getMaxValue());
+    }
+
+    private static double micros(final long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    static double ratio(
+            final long dividend,
+            final long divisor) {
+        return divisor == 0 ? 0 : dividend / (double) divisor;
+    }
+}
@@ -1,36 +1,101 @@
 package ru.mail.polis.murzin;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.HdrHistogram.Histogram;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ru.mail.polis.DAO;
 import ru.mail.polis.Iters;
 import ru.mail.polis.Record;
+import ru.mail.polis.Snapshot;
+import ru.mail.polis.WriteBatch;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 public class MyDAO implements DAO {
     private static final String BASE_NAME = "_SSTable";
     private static final String SUFFIX = ".dat";
     private static final String TEMP = ".tmp";
-    private static final int MAX_TABLES = 8;
+    private static final Logger log = LoggerFactory.getLogger(MyDAO.class);
+    // Smaller compactions are not worth splitting into key ranges
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final Cleaner CLEANER = Cleaner.create(
+            new ThreadFactoryBuilder().setNameFormat("iterator-cleaner-%d").setDaemon(true).build());
 
     private final long flushThreshold;
+    private final Config config;
     private final File base;
     private final ByteBuffer emptyBuffer = ByteBuffer.allocate(0);
-    private MemTable memTable = new MemTable();
-    private List<FileTable> fileTables;
-    private int generation;
+    private final CommitLog commitLog;
+    private final Manifest manifest;
+    private final BlockCache cache;
+    private final CompactionStrategy strategy;
+    private final ExecutorService flusher;
+    private final ExecutorService compactor;
+    // Merges key ranges of a compaction in parallel on behalf of the compactor
+    private final ForkJoinPool compactionWorkers;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final Object lock = new Object();
+    // Writers share it to append and put atomically, switching MemTables takes it exclusively
+    private final ReadWriteLock memTableLock = new ReentrantReadWriteLock();
+    // Compacted tables waiting for their iterators to be released, oldest first
+    private final Queue<FileTable> obsolete = new PriorityQueue<>(
+            (a, b) -> Integer.compare(a.generation(), b.generation()));
+    // While snapshots are open, MemTables keep every version of a key
+    private final AtomicInteger openSnapshots = new AtomicInteger();
+    private final Metrics metrics = new Metrics();
+    private final ObjectName mbeanName;
+    private volatile TableSet tables;
+    private volatile IOException flushError;
 
     /**
      * The Log-Structured Merge-Tree implementation DAO.
@@ -41,128 +106,1043 @@ public class MyDAO implements DAO {
     public MyDAO(
             final File base,
             final long flushThreshold) throws IOException {
+        this(base, Config.builder(flushThreshold).build());
+    }
+
+    /**
+     * The Log-Structured Merge-Tree implementation DAO.
+     * @param base path to working directory
+     * @param config tuning of this DAO
+     * @throws IOException if commit log replay or walk on base directory is failed or can`t create SSTable
+     */
+    public MyDAO(
+            final File base,
+            final Config config) throws IOException {
         this.base = base;
-        assert flushThreshold >= 0L;
-        this.flushThreshold = flushThreshold;
-        this.generation = 0;
-        this.fileTables = new ArrayList<>();
-        final List<Path> errorsCreateSSTable = new ArrayList<>();
+        this.config = config;
+        this.flushThreshold = config.getFlushThreshold();
+        this.strategy = config.getCompactionStrategy();
+        // Mapped tables don't need the cache unless blocks have to be decompressed
+        final boolean cached = config.getCacheSize() > 0 && (!config.isMapped() || config.getCodec() != Codec.NONE);
+        this.cache = cached ? new BlockCache(config.getCacheSize()) : null;
+        this.flusher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("flusher-%d").setDaemon(true).build());
+        this.compactor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("compactor-%d").setDaemon(true).build());
+        this.compactionWorkers = new ForkJoinPool(config.getCompactionThreads(), MyDAO::compactionWorker, null, false);
+        final MemTable memTable = new MemTable();
+        this.commitLog = new CommitLog(base, config);
+        commitLog.replay((key, value) -> memTable.put(key, value, false), memTable::removeRange);
+
+        if (Manifest.exists(base)) {
+            // Tables are opened once they are read
+            this.manifest = Manifest.open(base, this::fileOf, config.isMapped(), cache, config.isSyncTables());
+            deleteOrphans(manifest.tables());
+        } else {
+            this.manifest = createManifest();
+        }
+
+        this.tables = new TableSet(memTable, new ArrayList<>(), manifest.tables(), manifest.generation());
+        this.mbeanName = registerMBean();
+        checkThreshold();
+        maybeCompact();
+    }
+
+    /**
+     * Expose stats by JMX, which is optional for the DAO to work.
+     * @return name of the registered MBean or null if it is not registered
+     */
+    @Nullable
+    private ObjectName registerMBean() {
+        try {
+            final ObjectName name = StatsMBean.nameOf(base);
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            // The directory may be left by a DAO which was not closed, e.g. after a failure
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StatsMBean(this::stats), name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Unable to register MBean of DAO in {}", base, e);
+            return null;
+        }
+    }
+
+    private static ForkJoinWorkerThread compactionWorker(@NotNull final ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("compaction-worker-" + thread.getPoolIndex());
+        return thread;
+    }
 
+    /**
+     * Open every SSTable of the directory written before the manifest was introduced and record them.
+     * @return manifest of the tables
+     * @throws IOException if walk on base directory is failed or can`t create SSTable
+     */
+    private Manifest createManifest() throws IOException {
+        final List<FileTable> fileTables = new ArrayList<>();
+        final List<Path> errorsCreateSSTable = new ArrayList<>();
+        int generation = 0;
         try (Stream<Path> files = Files.walk(base.toPath())) {
-            files.filter(Files::isRegularFile)
+            final List<Path> paths = files.filter(Files::isRegularFile)
                     .filter(p -> p.getFileName().toString().endsWith(BASE_NAME + SUFFIX))
-                    .forEach(p -> {
-                        addFileTable(errorsCreateSSTable, p);
-                        generation = Math.max(generation, getGenerationOf(p.getFileName().toString()));
-                    });
+                    .collect(Collectors.toList());
+            for (final Path path : paths) {
+                addFileTable(fileTables, errorsCreateSSTable, path);
+                generation = Math.max(generation, getGenerationOf(path.getFileName().toString()));
+            }
         }
 
         if (!errorsCreateSSTable.isEmpty()) {
             throw new IOException("can`t create FileTable with path : " + errorsCreateSSTable.get(0).toString());
         }
+        return Manifest.create(base, generation, fileTables, config.isSyncTables());
+    }
+
+    /**
+     * Delete SSTables missing from the manifest with their sidecars: compacted tables left after a crash
+     * and tables whose cells are still in the commit log or in the compacted tables.
+     * @param live tables of the manifest
+     * @throws IOException if listing or deletion is failed
+     */
+    private void deleteOrphans(@NotNull final List<FileTable> live) throws IOException {
+        final Set<Integer> generations = new HashSet<>();
+        for (final FileTable fileTable : live) {
+            generations.add(fileTable.generation());
+        }
+        final List<Path> errorsDeleteFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(base.toPath())) {
+            // Tables, their temporary files and sidecars of both, e.g. 1_SSTable.dat and 1_SSTable.bloom.tmp
+            final List<Path> orphans = files
+                    .filter(p -> {
+                        final String name = p.getFileName().toString();
+                        return name.contains(BASE_NAME + ".") && !generations.contains(getGenerationOf(name));
+                    })
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString().endsWith(BASE_NAME + SUFFIX)))
+                    .collect(Collectors.toList());
+            // Sidecars are deleted before tables, so a crash in between leaves the table to find them next time
+            for (final Path orphan : orphans) {
+                try {
+                    Files.deleteIfExists(orphan);
+                } catch (IOException e) {
+                    errorsDeleteFiles.add(orphan);
+                }
+            }
+        }
+        if (!errorsDeleteFiles.isEmpty()) {
+            throw new IOException("Can not delete file " + errorsDeleteFiles.get(0).toString());
+        }
+    }
+
+    @NotNull
+    private File fileOf(final int generation) {
+        return new File(base, generation + BASE_NAME + SUFFIX);
     }
 
-    private void addFileTable(final List<Path> listErrors, final Path path) {
+    private void addFileTable(
+            final List<FileTable> fileTables,
+            final List<Path> listErrors,
+            final Path path) {
         try {
-            fileTables.add(new FileTable(path.toFile()));
+            fileTables.add(new FileTable(
+                    path.toFile(),
+                    getGenerationOf(path.getFileName().toString()),
+                    config.isMapped(),
+                    cache));
         } catch (IOException e) {
             listErrors.add(path);
         }
     }
 
     /**
-     * Iterator for only alive cells.
-     * @param from value of key of started position iterator
+     * Iterator for only alive cells within the range, which keeps its SSTables from deletion until it is exhausted.
+     * Bounds and direction are pushed down to every table, SSTables out of the range are skipped.
+     * Cells shadowed by range tombstones of any table and expired values are skipped too.
+     * @param snapshot tables whose SSTables are acquired on behalf of the iterator
+     * @param from least key of the range
+     * @param to key following the range or null if the range is unbounded
+     * @param descending whether to start from the greatest key
+     * @param timeStamp greatest timestamp of visible cells of MemTables
      * @return Iterator with alive cells
      * @throws IOException if fileTable.iterator(from) is failed
      */
-    private Iterator<Cell> iteratorAliveCells(@NotNull final ByteBuffer from) throws IOException {
+    private Iterator<Cell> iteratorAliveCells(
+            @NotNull final TableSet snapshot,
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean descending,
+            final long timeStamp) throws IOException {
         final List<Iterator<Cell>> listIterators = new ArrayList<>();
-        for (final FileTable fileTable : fileTables) {
-            listIterators.add(fileTable.iterator(from));
+        try {
+            for (final FileTable fileTable : snapshot.files) {
+                if (fileTable.overlaps(from, to)) {
+                    listIterators.add(fileTable.iterator(from, to, descending));
+                }
+            }
+        } catch (IOException e) {
+            release(snapshot.files);
+            throw e;
+        }
+        for (final MemTable frozen : snapshot.flushing) {
+            listIterators.add(frozen.iterator(from, to, descending, timeStamp));
         }
 
-        listIterators.add(memTable.iterator(from));
-        final Iterator<Cell> cells = Iters.collapseEquals(
-                Iterators.mergeSorted(listIterators, Cell.COMPARATOR),
-                Cell::getKey
-        );
+        listIterators.add(snapshot.memTable.iterator(from, to, descending, timeStamp));
+        final Comparator<Cell> order = descending ? Cell.DESCENDING_COMPARATOR : Cell.COMPARATOR;
+        final RangeTombstones tombstones = rangeTombstonesOf(snapshot, timeStamp);
+        final Iterator<Cell> alive = alive(listIterators, order, expiryTime(timeStamp));
+        final Iterator<Cell> cells = tombstones.isEmpty()
+                ? alive
+                : Iterators.filter(alive, cell -> !tombstones.covers(cell));
+        return new ReleasingIterator(cells, new Release(this, snapshot.files));
+    }
+
+    /**
+     * Range tombstones of SSTables and visible range tombstones of MemTables.
+     */
+    @NotNull
+    private static RangeTombstones rangeTombstonesOf(
+            @NotNull final TableSet snapshot,
+            final long timeStamp) {
+        final List<RangeTombstones> sets = new ArrayList<>();
+        sets.add(snapshot.rangeTombstones);
+        for (final MemTable frozen : snapshot.flushing) {
+            sets.add(frozen.rangeTombstones(timeStamp));
+        }
+        sets.add(snapshot.memTable.rangeTombstones(timeStamp));
+        sets.removeIf(RangeTombstones::isEmpty);
+        return sets.size() == 1 ? sets.get(0) : RangeTombstones.union(sets);
+    }
+
+    /**
+     * Get time of the latest range removal of the key visible in the tables.
+     */
+    private static long rangeTimeStampOf(
+            @NotNull final TableSet snapshot,
+            @NotNull final ByteBuffer key,
+            final long timeStamp) {
+        long result = Math.max(
+                snapshot.rangeTombstones.timeStampOf(key),
+                snapshot.memTable.rangeTimeStampOf(key, timeStamp));
+        for (final MemTable frozen : snapshot.flushing) {
+            result = Math.max(result, frozen.rangeTimeStampOf(key, timeStamp));
+        }
+        return result;
+    }
 
+    /**
+     * Take the current tables with a reference on every SSTable.
+     * @return snapshot of tables which should be passed to {@link #release(List)}
+     * @throws IOException if the DAO is closed
+     */
+    private TableSet acquire() throws IOException {
+        while (true) {
+            final TableSet snapshot = tables;
+            int acquired = 0;
+            while (acquired < snapshot.files.size() && snapshot.files.get(acquired).acquire()) {
+                acquired++;
+            }
+            if (acquired == snapshot.files.size()) {
+                return snapshot;
+            }
+
+            // The table was compacted away in the meantime, so retry with the fresh set
+            release(snapshot.files.subList(0, acquired));
+            if (snapshot == tables) {
+                throw new IOException("DAO is closed");
+            }
+        }
+    }
+
+    private void release(@NotNull final List<FileTable> files) throws IOException {
+        for (final FileTable fileTable : files) {
+            fileTable.release();
+        }
+        purgeObsolete();
+    }
+
+    /**
+     * Get time to check expiry of values at, snapshots see values alive at their timestamps.
+     */
+    private static long expiryTime(final long timeStamp) {
+        return timeStamp == Long.MAX_VALUE ? Value.getExpiryTimeNanos() : timeStamp;
+    }
+
+    private static Iterator<Cell> alive(
+            @NotNull final List<Iterator<Cell>> iterators,
+            final long time) {
+        return alive(iterators, Cell.COMPARATOR, time);
+    }
+
+    private static Iterator<Cell> alive(
+            @NotNull final List<Iterator<Cell>> iterators,
+            @NotNull final Comparator<Cell> order,
+            final long time) {
         return Iterators.filter(
-                        cells,
-                        cell -> !cell.getValue().isRemoved()
+                        freshest(iterators, order),
+                        cell -> cell.getValue().isAlive(time)
                 );
     }
 
+    private static Iterator<Cell> freshest(@NotNull final List<Iterator<Cell>> iterators) {
+        return freshest(iterators, Cell.COMPARATOR);
+    }
+
+    private static Iterator<Cell> freshest(
+            @NotNull final List<Iterator<Cell>> iterators,
+            @NotNull final Comparator<Cell> order) {
+        return Iters.collapseEquals(
+                Iterators.mergeSorted(iterators, order),
+                Cell::getKey
+        );
+    }
+
+    /**
+     * Point lookup which looks for the exact key from the freshest table to older ones
+     * and stops once no older table may hold a fresher cell.
+     * @param key key to look up
+     * @return value of the key
+     * @throws IOException if read of a table is failed
+     * @throws NoSuchElementException if key is absent or removed
+     */
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementException {
+        final long start = System.nanoTime();
+        final TableSet snapshot = acquire();
+        try {
+            final Value value = freshestValue(snapshot, key, Long.MAX_VALUE);
+            if (value == null || value.isRemoved()) {
+                throw new NoSuchElementException("Not found");
+            }
+            return value.getData();
+        } finally {
+            release(snapshot.files);
+            Metrics.recordSince(metrics.gets, start);
+        }
+    }
+
+    /**
+     * Lookup of many keys which passes every SSTable once in ascending order of keys,
+     * instead of searching it from scratch for every key.
+     * @param keys keys to look up
+     * @return values of present keys in ascending order of keys
+     * @throws IOException if read of a table is failed
+     */
+    @NotNull
+    @Override
+    public Map<ByteBuffer, ByteBuffer> getAll(@NotNull final Collection<ByteBuffer> keys) throws IOException {
+        final long start = System.nanoTime();
+        final List<ByteBuffer> sorted = new ArrayList<>(new TreeSet<>(keys));
+        final long now = Value.getExpiryTimeNanos();
+        final Value[] values = new Value[sorted.size()];
+        final boolean[] inMemory = new boolean[values.length];
+        final TableSet snapshot = acquire();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = freshestInMemory(snapshot, sorted.get(i), Long.MAX_VALUE);
+                inMemory[i] = values[i] != null;
+            }
+
+            final long[] hashes = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                hashes[i] = BloomFilter.hash(sorted.get(i));
+            }
+            final List<ByteBuffer> probed = new ArrayList<>();
+            final int[] indexes = new int[values.length];
+            for (final FileTable fileTable : snapshot.freshestFirst) {
+                probed.clear();
+                for (int i = 0; i < values.length; i++) {
+                    final Value value = values[i];
+                    if (inMemory[i] || value != null && value.getTimeStamp() >= fileTable.maxTimeStamp()) {
+                        continue;
+                    }
+                    final ByteBuffer key = sorted.get(i);
+                    if (fileTable.mightContain(key, hashes[i])) {
+                        indexes[probed.size()] = i;
+                        probed.add(key);
+                    }
+                }
+                if (probed.isEmpty()) {
+                    continue;
+                }
+
+                final Value[] found = fileTable.getAll(probed);
+                for (int j = 0; j < found.length; j++) {
+                    final Value value = values[indexes[j]];
+                    if (found[j] != null && (value == null || found[j].getTimeStamp() > value.getTimeStamp())) {
+                        values[indexes[j]] = found[j];
+                    }
+                }
+            }
+
+            final Map<ByteBuffer, ByteBuffer> result = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                final Value value = values[i];
+                if (value != null && value.isAlive(now)
+                        && value.getTimeStamp() >= rangeTimeStampOf(snapshot, sorted.get(i), Long.MAX_VALUE)) {
+                    result.put(sorted.get(i), value.getData());
+                }
+            }
+            return result;
+        } finally {
+            release(snapshot.files);
+            Metrics.recordSince(metrics.getAlls, start);
+        }
+    }
+
+    /**
+     * Look up the key in MemTables, every one of which is fresher than the previous one and than every SSTable.
+     */
+    @Nullable
+    private static Value freshestInMemory(
+            @NotNull final TableSet snapshot,
+            @NotNull final ByteBuffer key,
+            final long timeStamp) {
+        final Value active = snapshot.memTable.get(key, timeStamp);
+        if (active != null) {
+            return active;
+        }
+        for (int i = snapshot.flushing.size() - 1; i >= 0; i--) {
+            final Value frozen = snapshot.flushing.get(i).get(key, timeStamp);
+            if (frozen != null) {
+                return frozen;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Look up the key in MemTables and SSTables.
+     * SSTables hold only cells written before every snapshot of tables containing them,
+     * so only versions in MemTables are filtered by the timestamp.
+     * @return value or tombstone of the key, null if there is no visible version, it is expired or removed by range
+     */
+    @Nullable
+    private Value freshestValue(
+            @NotNull final TableSet snapshot,
+            @NotNull final ByteBuffer key,
+            final long timeStamp) throws IOException {
+        final Value value = freshestVersion(snapshot, key, timeStamp);
+        if (value == null
+                || value.isExpired(expiryTime(timeStamp))
+                || value.getTimeStamp() < rangeTimeStampOf(snapshot, key, timeStamp)) {
+            return null;
+        }
+        return value;
+    }
+
+    @Nullable
+    private Value freshestVersion(
+            @NotNull final TableSet snapshot,
+            @NotNull final ByteBuffer key,
+            final long timeStamp) throws IOException {
+        final Value inMemory = freshestInMemory(snapshot, key, timeStamp);
+        if (inMemory != null) {
+            return inMemory;
+        }
+
+        // Tables written by compaction may be older than ones of later generations,
+        // so SSTables are ordered by timestamps instead
+        final long hash = BloomFilter.hash(key);
+        Value result = null;
+        int read = 0;
+        for (final FileTable fileTable : snapshot.freshestFirst) {
+            if (result != null && result.getTimeStamp() >= fileTable.maxTimeStamp()) {
+                break;
+            }
+            if (!fileTable.mightContain(key, hash)) {
+                continue;
+            }
+            read++;
+            final Value value = fileTable.get(key);
+            if (value != null && (result == null || value.getTimeStamp() > result.getTimeStamp())) {
+                result = value;
+            }
+        }
+        metrics.tablesPerGet.recordValue(read);
+        return result;
+    }
+
     @NotNull
     @Override
     public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
-        final Iterator<Cell> alive = iteratorAliveCells(from);
+        return range(from, null, false);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> range(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        return range(from, to, false);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> range(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean descending) throws IOException {
+        if (to != null && from.compareTo(to) >= 0) {
+            return Iters.empty();
+        }
+        // Only opening of the iterator is timed, as it is consumed at the pace of the caller
+        final long start = System.nanoTime();
+        final Iterator<Record> result = records(iteratorAliveCells(acquire(), from, to, descending, Long.MAX_VALUE));
+        Metrics.recordSince(metrics.ranges, start);
+        return result;
+    }
+
+    private static Iterator<Record> records(@NotNull final Iterator<Cell> cells) {
         return Iterators.transform(
-                alive,
+                cells,
                 cell -> Record.of(cell.getKey(), cell.getValue().getData()));
     }
 
+    /**
+     * Take a consistent view of the DAO, which keeps its SSTables and versions in MemTables until it is closed.
+     * @return the snapshot
+     * @throws IOException if the DAO is closed
+     */
+    @NotNull
+    @Override
+    public Snapshot snapshot() throws IOException {
+        final TableSet snapshot;
+        final long timeStamp;
+        // Writers take timestamps under the shared lock, so every write older than the snapshot is in its tables
+        memTableLock.writeLock().lock();
+        try {
+            snapshot = acquire();
+            timeStamp = Value.getCurrentTimeNanos();
+            openSnapshots.incrementAndGet();
+        } finally {
+            memTableLock.writeLock().unlock();
+        }
+        return new TableSnapshot(snapshot, timeStamp);
+    }
+
     @Override
     public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) throws IOException {
-        memTable.upsert(key.duplicate(), value.duplicate());
-        checkThreshold();
+        write(metrics.upserts, () -> Collections.singletonList(new Cell(key, Value.of(value))));
+    }
+
+    /**
+     * Insert or update the value, which expires after given time to live.
+     * Expired values are skipped by reads and dropped by compaction.
+     * @param key key of the value
+     * @param value value to store
+     * @param ttlMillis time to live in milliseconds
+     * @throws IOException if write to commit log is failed or flush is failed before
+     */
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long ttlMillis) throws IOException {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL should be positive: " + ttlMillis);
+        }
+        write(metrics.upserts, () -> Collections.singletonList(new Cell(key, Value.of(value, ttlMillis))));
+    }
+
+    /**
+     * Apply the batch with a single commit log record, so it is either replayed whole or lost whole,
+     * and into a single MemTable. Snapshots see either the whole batch or nothing of it,
+     * while concurrent reads without a snapshot may observe a part of the batch being applied.
+     * @param batch upserts and removals to apply
+     * @throws IOException if write to commit log is failed or flush is failed before
+     */
+    @Override
+    public void apply(@NotNull final WriteBatch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        write(metrics.batches, () -> {
+            final List<Cell> cells = new ArrayList<>(batch.size());
+            for (final WriteBatch.Mutation mutation : batch.mutations()) {
+                final ByteBuffer value = mutation.getValue();
+                cells.add(new Cell(mutation.getKey(), value == null ? Value.tombstone() : Value.of(value)));
+            }
+            return cells;
+        });
+    }
+
+    /**
+     * Append cells to the commit log and put them into the active MemTable.
+     * @param latencies histogram of durations of the write
+     * @param cellsSupplier creates cells under the lock, so their timestamps are ordered with snapshots
+     */
+    private void write(
+            @NotNull final Histogram latencies,
+            @NotNull final Supplier<List<Cell>> cellsSupplier) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            checkFlushError();
+            final long position;
+            memTableLock.readLock().lock();
+            try {
+                final List<Cell> cells = cellsSupplier.get();
+                position = commitLog.append(cells);
+                final MemTable memTable = tables.memTable;
+                final boolean retain = openSnapshots.get() > 0;
+                for (final Cell cell : cells) {
+                    final Value value = cell.getValue();
+                    memTable.put(cell.getKey(), value, retain);
+                    final int valueSize = value.isRemoved() ? 0 : value.getData().remaining();
+                    metrics.userBytes.add(cell.getKey().remaining() + valueSize);
+                }
+            } finally {
+                memTableLock.readLock().unlock();
+            }
+            commitLog.sync(position);
+            checkThreshold();
+        } finally {
+            Metrics.recordSince(latencies, start);
+        }
+    }
+
+    /**
+     * Remove the range with a single range tombstone instead of a tombstone for every key.
+     * @param from least key of the range (inclusive)
+     * @param to key following the range (exclusive) or null if the range is unbounded
+     * @throws IOException if write to commit log is failed or flush is failed before
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        if (to != null && from.compareTo(to) >= 0) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            checkFlushError();
+            final long position;
+            memTableLock.readLock().lock();
+            try {
+                final RangeTombstone tombstone = new RangeTombstone(
+                        from.duplicate(),
+                        to == null ? null : to.duplicate(),
+                        Value.getCurrentTimeNanos());
+                position = commitLog.append(tombstone);
+                tables.memTable.removeRange(tombstone);
+                metrics.userBytes.add(tombstone.sizeInBytes());
+            } finally {
+                memTableLock.readLock().unlock();
+            }
+            commitLog.sync(position);
+            checkThreshold();
+        } finally {
+            Metrics.recordSince(metrics.rangeRemovals, start);
+        }
+    }
+
+    private void checkThreshold() throws IOException {
+        if (tables.memTable.sizeInBytes() > flushThreshold) {
+            scheduleFlush(flushThreshold);
+        }
+    }
+
+    private void maybeCompact() {
+        if (strategy.pick(tables.files) == null || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(this::compactInBackground);
+        } catch (RejectedExecutionException e) {
+            // The DAO is being closed
+            compactionScheduled.set(false);
+        }
+    }
+
+    private void compactInBackground() {
+        try {
+            Compaction compaction = strategy.pick(tables.files);
+            while (compaction != null) {
+                compactTables(compaction);
+                compaction = strategy.pick(tables.files);
+            }
+        } catch (IOException e) {
+            log.error("Background compaction is failed", e);
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private void checkFlushError() throws IOException {
+        final IOException error = flushError;
+        if (error != null) {
+            throw new IOException("Background flush is failed", error);
+        }
+    }
+
+    /**
+     * Swap the active MemTable for an empty one and hand it to the flusher.
+     * Stalls the writer while too many MemTables are already waiting for flush.
+     * @param threshold size of the MemTable to flush it, so concurrent writers flush it once
+     */
+    private void scheduleFlush(final long threshold) throws IOException {
+        synchronized (lock) {
+            while (tables.flushing.size() >= config.getMaxPendingFlushes() && flushError == null) {
+                waitForFlush();
+            }
+        }
+        checkFlushError();
+
+        memTableLock.writeLock().lock();
+        try {
+            if (tables.memTable.sizeInBytes() <= threshold) {
+                return;
+            }
+            final long segment = commitLog.roll();
+            synchronized (lock) {
+                final MemTable frozen = tables.memTable;
+                tables = tables.freeze();
+                final int generation = tables.generation;
+                flusher.execute(() -> flush(frozen, generation, segment));
+            }
+        } finally {
+            memTableLock.writeLock().unlock();
+        }
+        // Writers go on with the new segment while the previous one is forced
+        commitLog.seal();
     }
 
-    private void checkThreshold() throws IOException{
-        if (memTable.sizeInBytes() > flushThreshold) {
-            flush();
+    private void flush(
+            @NotNull final MemTable frozen,
+            final int generation,
+            final long segment) {
+        try {
+            final long start = System.nanoTime();
+            final RangeTombstones tombstones = frozen.rangeTombstones(Long.MAX_VALUE);
+            final FileTable table = writeTable(
+                    Iterators.peekingIterator(frozen.iterator(emptyBuffer)),
+                    generation,
+                    0,
+                    Long.MAX_VALUE,
+                    tombstones,
+                    frozen.rows());
+            manifest.edit(Collections.emptyList(), Collections.singletonList(table));
+            Metrics.recordSince(metrics.flushes, start);
+            metrics.flushedBytes.add(table.sizeInBytes());
+            // The table is durable and recorded now, so the log segment is released before waiters are woken up
+            commitLog.release(segment);
+            synchronized (lock) {
+                tables = tables.flushed(frozen, table);
+                lock.notifyAll();
+            }
+            maybeCompact();
+        } catch (IOException e) {
+            failFlush(e);
+        } catch (RuntimeException | Error e) {
+            // Writers waiting for this flush have to be woken up anyway
+            failFlush(new IOException("Unexpected flush failure", e));
+            throw e;
+        }
+    }
+
+    private void failFlush(@NotNull final IOException e) {
+        synchronized (lock) {
+            flushError = e;
+            lock.notifyAll();
         }
-        if (fileTables.size() > MAX_TABLES) {
-            compact();
+    }
+
+    private void awaitFlushes() throws IOException {
+        synchronized (lock) {
+            while (!tables.flushing.isEmpty() && flushError == null) {
+                waitForFlush();
+            }
         }
+        checkFlushError();
     }
 
-    private void flush() throws IOException {
-        generation++;
+    private void waitForFlush() throws InterruptedIOException {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for flush");
+        }
+    }
+
+    private static void awaitTermination(@NotNull final ExecutorService executor) throws InterruptedIOException {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                throw new InterruptedIOException("Background tasks are not finished");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for background tasks");
+        }
+    }
+
+    private FileTable writeTable(
+            @NotNull final PeekingIterator<Cell> cells,
+            final int generation,
+            final int level,
+            final long maxSize,
+            @NotNull final RangeTombstones tombstones,
+            final long expectedRows) throws IOException {
         final File tmp = new File(base, generation + BASE_NAME + TEMP);
-        FileTable.write(memTable.iterator(emptyBuffer), tmp);
+        FileTable.write(cells, tmp, config, level, maxSize, tombstones, expectedRows);
         final File dest = new File(base, generation + BASE_NAME + SUFFIX);
         Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
-        memTable = new MemTable();
-        fileTables.add(new FileTable(dest));
+        return new FileTable(dest, generation, config.isMapped(), cache);
     }
 
+    /**
+     * Merge all SSTables as chosen by the compaction strategy on the compaction thread and wait for it.
+     * Reads and writes are served by the previous tables meanwhile.
+     * @throws IOException if compaction is failed
+     */
     @Override
     public void compact() throws IOException {
-        final Iterator<Cell> cellIterator = iteratorAliveCells(emptyBuffer);
-        generation++;
-        final File tmp = new File(base, generation + BASE_NAME + TEMP);
-        FileTable.write(cellIterator, tmp);
-        final File dest = new File(base, generation + BASE_NAME + SUFFIX);
-        Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
-        memTable = new MemTable();
+        scheduleFlush(0);
+        awaitFlushes();
+
+        final Future<?> done = compactor.submit(() -> {
+            final Compaction compaction = strategy.major(tables.files);
+            if (compaction != null) {
+                compactTables(compaction);
+            }
+            return null;
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compaction");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Compaction is failed", e.getCause());
+        }
+    }
+
+    /**
+     * Replace the tables with tables of their freshest cells.
+     * Cells shadowed by range tombstones of the tables are dropped, while the tombstones themselves
+     * are kept for older tables unless removals are dropped.
+     * Large compactions are split into key ranges by samples of the tables, which are merged in parallel
+     * into tables of their own. Tables of every range replace the compacted ones at once.
+     * @param compaction tables to merge and layout of the result
+     * @throws IOException if write of the new tables is failed
+     */
+    private void compactTables(@NotNull final Compaction compaction) throws IOException {
+        final long start = System.nanoTime();
+        final List<FileTable> compacted = compaction.tables();
+        final List<RangeTombstones> sets = new ArrayList<>();
+        long size = 0;
+        long rows = 0;
+        for (final FileTable fileTable : compacted) {
+            sets.add(fileTable.rangeTombstones());
+            size += fileTable.sizeInBytes();
+            rows += fileTable.rows();
+        }
+        final RangeTombstones tombstones = RangeTombstones.union(sets);
+        final long now = Value.getExpiryTimeNanos();
+
+        final int parts = (int) Math.min(
+                Math.min(config.getCompactionThreads(), compaction.maxParts()),
+                size / MIN_PART_SIZE);
+        final List<ByteBuffer> bounds = parts > 1 ? KeySplitter.split(compacted, parts) : Collections.emptyList();
+        final List<FileTable> written;
+        if (bounds.isEmpty()) {
+            written = compactRange(compaction, tombstones, now, expectedRows(rows, size, 1, compaction), null, null);
+        } else {
+            final List<Callable<List<FileTable>>> tasks = new ArrayList<>(bounds.size() + 1);
+            final long expectedRows = expectedRows(rows, size, bounds.size() + 1, compaction);
+            ByteBuffer from = null;
+            for (final ByteBuffer to : bounds) {
+                final ByteBuffer lower = from;
+                tasks.add(() -> compactRange(compaction, tombstones, now, expectedRows, lower, to));
+                from = to;
+            }
+            final ByteBuffer last = from;
+            tasks.add(() -> compactRange(compaction, tombstones, now, expectedRows, last, null));
+            written = compactInParallel(tasks);
+        }
 
-        for (final FileTable fileTable : fileTables) {
+        try {
+            manifest.edit(compacted, written);
+        } catch (IOException e) {
+            deleteTables(written);
+            throw e;
+        }
+        synchronized (lock) {
+            tables = tables.compacted(compacted, written);
+            obsolete.addAll(compacted);
+        }
+        metrics.compactionBytesRead.add(size);
+        for (final FileTable fileTable : written) {
+            metrics.compactionBytesWritten.add(fileTable.sizeInBytes());
+        }
+        Metrics.recordSince(metrics.compactions, start);
+        release(compacted);
+    }
+
+    /**
+     * Estimate rows of a table written by the compaction, so its Bloom filter is sized up front.
+     * Ranges hold about the same number of bytes, so every range gets its share of rows with a margin for skew
+     * of the samples, while a table gets no more rows than fit into its size by the average size of a row.
+     * @param rows number of rows of the compacted tables
+     * @param size size of the compacted tables in bytes
+     * @param ranges number of ranges merged in parallel
+     * @param compaction layout of the result
+     * @return number of rows
+     */
+    private static long expectedRows(
+            final long rows,
+            final long size,
+            final int ranges,
+            @NotNull final Compaction compaction) {
+        long result = ranges == 1 ? rows : Math.min(rows, rows * 3 / (ranges * 2L) + 1);
+        if (size > 0) {
+            // A table is closed by the first row past its size
+            result = Math.min(result, (long) ((double) compaction.maxTableSize() * rows / size) + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Merge the range of the compacted tables.
+     * @param compaction tables to merge and layout of the result
+     * @param tombstones range tombstones of the compacted tables
+     * @param now time to expire values at
+     * @param expectedRows number of rows to size Bloom filters of the tables for
+     * @param from least key of the range or null if the range is unbounded below
+     * @param to key following the range or null if the range is unbounded above
+     * @return tables with cells and range tombstones of the range, which are deleted if the write is failed
+     * @throws IOException if write of the tables is failed
+     */
+    private List<FileTable> compactRange(
+            @NotNull final Compaction compaction,
+            @NotNull final RangeTombstones tombstones,
+            final long now,
+            final long expectedRows,
+            @Nullable final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        final List<Iterator<Cell>> listIterators = new ArrayList<>();
+        for (final FileTable fileTable : compaction.tables()) {
+            listIterators.add(fileTable.iterator(from == null ? emptyBuffer : from, to, false));
+        }
+        final Iterator<Cell> merged = compaction.dropRemovals()
+                ? alive(listIterators, now)
+                : expire(freshest(listIterators), now);
+        final PeekingIterator<Cell> cells = Iterators.peekingIterator(tombstones.isEmpty()
+                ? merged
+                : Iterators.filter(merged, cell -> !tombstones.covers(cell)));
+        final RangeTombstones kept = compaction.dropRemovals() ? RangeTombstones.EMPTY : tombstones.clip(from, to);
+
+        final List<FileTable> written = new ArrayList<>();
+        try {
+            // Every table gets tombstones from the first key it holds up to the first key of the next one
+            ByteBuffer lower = null;
+            while (cells.hasNext() || written.isEmpty() && !kept.isEmpty()) {
+                final int generation;
+                synchronized (lock) {
+                    tables = tables.nextGeneration();
+                    generation = tables.generation;
+                }
+                written.add(writeTable(
+                        cells,
+                        generation,
+                        compaction.level(),
+                        compaction.maxTableSize(),
+                        kept.clip(lower, null),
+                        expectedRows));
+                lower = cells.hasNext() ? cells.peek().getKey() : null;
+            }
+        } catch (IOException e) {
+            deleteTables(written);
+            throw e;
+        }
+        return written;
+    }
+
+    /**
+     * Run merges of key ranges on the compaction workers and wait for all of them.
+     * @param tasks merges of disjoint key ranges
+     * @return tables written by every merge
+     * @throws IOException if any merge is failed, then tables of the other merges are deleted
+     */
+    private List<FileTable> compactInParallel(@NotNull final List<Callable<List<FileTable>>> tasks) throws IOException {
+        final List<Future<List<FileTable>>> parts;
+        try {
+            parts = compactionWorkers.invokeAll(tasks);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Compaction workers are stopped", e);
+        }
+        final List<FileTable> written = new ArrayList<>();
+        Throwable error = null;
+        for (final Future<List<FileTable>> part : parts) {
+            try {
+                written.addAll(part.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new InterruptedIOException("Interrupted while waiting for compaction");
+            } catch (ExecutionException e) {
+                error = error == null ? e.getCause() : error;
+            }
+        }
+        if (error == null) {
+            return written;
+        }
+        deleteTables(written);
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        throw new IOException("Compaction is failed", error);
+    }
+
+    private void deleteTables(@NotNull final List<FileTable> written) throws IOException {
+        for (final FileTable fileTable : written) {
             fileTable.close();
+            deleteFile(new ArrayList<>(), new File(base, fileTable.generation() + BASE_NAME + SUFFIX).toPath());
         }
-        fileTables = new ArrayList<>();
+    }
 
+    /**
+     * Replace expired values with tombstones, as they still shadow older versions of their keys in other tables.
+     */
+    private static Iterator<Cell> expire(
+            @NotNull final Iterator<Cell> cells,
+            final long time) {
+        return Iterators.transform(cells, cell -> {
+            final Value value = cell.getValue();
+            return value.isExpired(time) ? new Cell(cell.getKey(), new Value(value.getTimeStamp(), null)) : cell;
+        });
+    }
+
+    /**
+     * Delete compacted tables which are not read anymore.
+     * Tables are deleted from the oldest one, so after a crash no table outlives
+     * a newer table with removals of its keys.
+     * @throws IOException if deletion is failed
+     */
+    private void purgeObsolete() throws IOException {
         final List<Path> errorsDeleteFiles = new ArrayList<>();
-        try (Stream<Path> files = Files.walk(base.toPath())) {
-            files.filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().endsWith(BASE_NAME + SUFFIX))
-                    .forEach(p -> {
-                        if (getGenerationOf(p.getFileName().toString()) != generation) {
-                            deleteFile(errorsDeleteFiles, p);
-                        }
-                    });
+        synchronized (lock) {
+            while (!obsolete.isEmpty() && obsolete.peek().isReleased()) {
+                final int generation = obsolete.remove().generation();
+                deleteFile(errorsDeleteFiles, new File(base, generation + BASE_NAME + SUFFIX).toPath());
+            }
         }
 
         if (!errorsDeleteFiles.isEmpty()) {
             throw new IOException("Can not delete file " + errorsDeleteFiles.get(0).toString());
         }
-
-        fileTables.add(new FileTable(dest));
     }
 
     private void deleteFile(final List<Path> errorsList, final Path path) {
         try {
+            // Sidecars go first, so they are never left without their table
+            Files.deleteIfExists(FileTable.filterOf(path.toFile()).toPath());
+            Files.deleteIfExists(FileTable.levelOf(path.toFile()).toPath());
             Files.delete(path);
         } catch (IOException e) {
             errorsList.add(path);
@@ -171,18 +1151,106 @@ public class MyDAO implements DAO {
 
     @Override
     public void remove(@NotNull final ByteBuffer key) throws IOException {
-        memTable.remove(key.duplicate());
-        checkThreshold();
+        write(metrics.removes, () -> Collections.singletonList(new Cell(key, Value.tombstone())));
     }
 
     @Override
     public void close() throws IOException {
-        if (memTable.sizeInBytes() != 0) {
-            flush();
+        try {
+            scheduleFlush(0);
+            awaitFlushes();
+        } finally {
+            // Flushes may schedule compactions, so flusher is stopped first
+            flusher.shutdown();
+            awaitTermination(flusher);
+            compactor.shutdown();
+            awaitTermination(compactor);
+            compactionWorkers.shutdown();
+            for (final FileTable fileTable : tables.files) {
+                fileTable.close();
+            }
+            // Iterators left open are invalidated, so compacted tables can be deleted right away
+            synchronized (lock) {
+                for (final FileTable fileTable : obsolete) {
+                    fileTable.close();
+                }
+            }
+            purgeObsolete();
+            commitLog.close();
+            manifest.close();
+            unregisterMBean();
         }
-        for (final FileTable fileTable : fileTables) {
-            fileTable.close();
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            log.warn("Unable to unregister MBean of DAO in {}", base, e);
+        }
+    }
+
+    /**
+     * Take current stats of the DAO, which are exposed by JMX as well.
+     * Latencies are in microseconds, sizes are in bytes.
+     * @return values of the stats by their names in alphabetical order
+     */
+    @NotNull
+    @Override
+    public Map<String, Number> stats() {
+        final Map<String, Number> stats = new TreeMap<>();
+        Metrics.putDurations(stats, "get", metrics.gets);
+        Metrics.putDurations(stats, "getAll", metrics.getAlls);
+        Metrics.putDurations(stats, "range", metrics.ranges);
+        Metrics.putDurations(stats, "upsert", metrics.upserts);
+        Metrics.putDurations(stats, "remove", metrics.removes);
+        Metrics.putDurations(stats, "removeRange", metrics.rangeRemovals);
+        Metrics.putDurations(stats, "apply", metrics.batches);
+        Metrics.putDurations(stats, "flush", metrics.flushes);
+        Metrics.putDurations(stats, "compaction", metrics.compactions);
+        Metrics.putCounts(stats, "get.tables", metrics.tablesPerGet);
+
+        final TableSet current = tables;
+        long memTableBytes = current.memTable.sizeInBytes();
+        for (final MemTable frozen : current.flushing) {
+            memTableBytes += frozen.sizeInBytes();
         }
+        stats.put("memtable.bytes", memTableBytes);
+        stats.put("memtable.flushing", current.flushing.size());
+        long tableBytes = 0;
+        for (final FileTable fileTable : current.files) {
+            tableBytes += fileTable.sizeInBytes();
+        }
+        stats.put("sstable.count", current.files.size());
+        stats.put("sstable.bytes", tableBytes);
+        synchronized (lock) {
+            // Compacted tables still read by open iterators
+            stats.put("sstable.obsolete", obsolete.size());
+        }
+
+        // Every byte of a write goes to the commit log, then to a flushed table and to tables of compactions
+        final long userBytes = metrics.userBytes.sum();
+        final long logBytes = commitLog.bytesWritten();
+        final long flushedBytes = metrics.flushedBytes.sum();
+        final long compactedBytes = metrics.compactionBytesWritten.sum();
+        stats.put("write.user.bytes", userBytes);
+        stats.put("write.log.bytes", logBytes);
+        stats.put("write.flush.bytes", flushedBytes);
+        stats.put("compaction.read.bytes", metrics.compactionBytesRead.sum());
+        stats.put("compaction.written.bytes", compactedBytes);
+        stats.put("write.amplification", Metrics.ratio(logBytes + flushedBytes + compactedBytes, userBytes));
+
+        if (cache != null) {
+            stats.put("cache.hits", cache.hits());
+            stats.put("cache.misses", cache.misses());
+            stats.put("cache.hit.ratio", Metrics.ratio(cache.hits(), cache.hits() + cache.misses()));
+            stats.put("cache.evictions", cache.evictions());
+            stats.put("cache.bytes", cache.size());
+        }
+        return stats;
     }
 
     private int getGenerationOf(final String name) {
@@ -198,4 +1266,129 @@ public class MyDAO implements DAO {
         }
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Releases SSTables of an iterator once it is exhausted or unreachable.
+     */
+    private static final class Release implements Runnable {
+        private final MyDAO dao;
+        private final List<FileTable> files;
+
+        Release(
+                @NotNull final MyDAO dao,
+                @NotNull final List<FileTable> files) {
+            this.dao = dao;
+            this.files = files;
+        }
+
+        @Override
+        public void run() {
+            try {
+                dao.release(files);
+            } catch (IOException e) {
+                log.warn("Unable to release SSTables", e);
+            }
+        }
+    }
+
+    private static final class SnapshotRelease implements Runnable {
+        private final MyDAO dao;
+        private final List<FileTable> files;
+
+        SnapshotRelease(
+                @NotNull final MyDAO dao,
+                @NotNull final List<FileTable> files) {
+            this.dao = dao;
+            this.files = files;
+        }
+
+        @Override
+        public void run() {
+            dao.openSnapshots.decrementAndGet();
+            new Release(dao, files).run();
+        }
+    }
+
+    private final class TableSnapshot implements Snapshot {
+        private final TableSet tables;
+        private final long timeStamp;
+        private final Cleaner.Cleanable cleanable;
+        private volatile boolean closed;
+
+        TableSnapshot(
+                @NotNull final TableSet tables,
+                final long timeStamp) {
+            this.tables = tables;
+            this.timeStamp = timeStamp;
+            this.cleanable = CLEANER.register(this, new SnapshotRelease(MyDAO.this, tables.files));
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
+            checkOpen();
+            // The iterator takes own references, so it may outlive the snapshot
+            int acquired = 0;
+            while (acquired < tables.files.size() && tables.files.get(acquired).acquire()) {
+                acquired++;
+            }
+            if (acquired < tables.files.size()) {
+                release(tables.files.subList(0, acquired));
+                throw new IOException("Snapshot is closed");
+            }
+            return records(iteratorAliveCells(tables, from, null, false, timeStamp));
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementException {
+            checkOpen();
+            final Value value = freshestValue(tables, key, timeStamp);
+            if (value == null || value.isRemoved()) {
+                throw new NoSuchElementException("Not found");
+            }
+            return value.getData();
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Snapshot is closed");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            cleanable.clean();
+        }
+    }
+
+    private static final class ReleasingIterator implements Iterator<Cell> {
+        private final Iterator<Cell> iterator;
+        private final Cleaner.Cleanable cleanable;
+
+        ReleasingIterator(
+                @NotNull final Iterator<Cell> iterator,
+                @NotNull final Release release) {
+            this.iterator = iterator;
+            this.cleanable = CLEANER.register(this, release);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (iterator.hasNext()) {
+                return true;
+            }
+            cleanable.clean();
+            return false;
+        }
+
+        @Override
+        public Cell next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+    }
+}
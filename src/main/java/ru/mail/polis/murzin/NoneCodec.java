@@ -0,0 +1,41 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+final class NoneCodec implements Codec {
+    @Override
+    public int id() {
+        return 0;
+    }
+
+    @Override
+    public int maxCompressedLength(final int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(
+            @NotNull final byte[] src,
+            final int srcOffset,
+            final int length,
+            @NotNull final byte[] dst,
+            final int dstOffset) {
+        System.arraycopy(src, srcOffset, dst, dstOffset, length);
+        return length;
+    }
+
+    @Override
+    public void decompress(
+            @NotNull final ByteBuffer src,
+            @NotNull final byte[] dst,
+            final int dstOffset,
+            final int length) throws IOException {
+        if (src.remaining() != length) {
+            throw new IOException("Corrupted block");
+        }
+        src.duplicate().get(dst, dstOffset, length);
+    }
+}
@@ -0,0 +1,202 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Data block of the block-based SSTable format, where keys share prefixes with previous keys.
+ *
+ * <p>Layout is {@code {[cell]}{[restart offset]}[restarts][count]}, where cell is
+ * {@code [shared][unshared][key suffix][timestamp][value size][expiry][value]}, shared, unshared and value size
+ * are varints and tombstones store negative timestamp without value part. Value size is shifted left by one bit,
+ * which is set for expiring values, the only ones with {@code [expiry]}. Every
+ * {@link #RESTART_INTERVAL}-th cell is a restart point which stores its key in full.
+ *
+ * <p>Instances remember the last decoded cell, so sequential reads decode every cell once.
+ */
+final class PrefixBlock implements Block {
+    static final int RESTART_INTERVAL = 16;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int restarts;
+    private final int restartOffsets;
+
+    // Index and offset of the next cell to decode and the key of the previous one
+    private int next = -1;
+    private int offset;
+    private byte[] key;
+
+    PrefixBlock(@NotNull final ByteBuffer data) {
+        this.data = data;
+        this.count = data.getInt(data.limit() - Integer.BYTES);
+        this.restarts = data.getInt(data.limit() - Integer.BYTES * 2);
+        this.restartOffsets = data.limit() - Integer.BYTES * 2 - Integer.BYTES * restarts;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @NotNull
+    @Override
+    public Cell cellAt(final int i) {
+        assert 0 <= i && i < count;
+        moveTo(i);
+        final ByteBuffer cellKey = decodeKey();
+        return new Cell(cellKey, decodeValue());
+    }
+
+    @Override
+    public int lowerBound(
+            @NotNull final ByteBuffer target,
+            final int from) {
+        if (from >= count) {
+            return count;
+        }
+
+        // Last restart after the one of from whose key is less than the target, keys of restarts are stored in full
+        final int first = from / RESTART_INTERVAL;
+        int left = first + 1;
+        int right = restarts - 1;
+        while (left <= right) {
+            final int mid = left + ((right - left) >> 1);
+            if (restartKey(mid).compareTo(target) < 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+
+        if (left - 1 > first) {
+            seek(left - 1);
+        } else {
+            moveTo(from);
+        }
+        while (next < count) {
+            final int index = next;
+            final int start = offset;
+            final byte[] previous = key;
+            if (decodeKey().compareTo(target) >= 0) {
+                // Step back, so the following cellAt() decodes just the found cell
+                next = index;
+                offset = start;
+                key = previous;
+                return index;
+            }
+            skipValue();
+        }
+        return count;
+    }
+
+    private ByteBuffer restartKey(final int restart) {
+        int position = data.getInt(restartOffsets + Integer.BYTES * restart);
+        final int shared = readVarint(position);
+        assert shared == 0;
+        position += varintSize(shared);
+        final int unshared = readVarint(position);
+        position += varintSize(unshared);
+        return data.duplicate().position(position).limit(position + unshared).slice();
+    }
+
+    private void moveTo(final int i) {
+        // Decoding goes on from the previous cell unless the restart of the cell is closer
+        if (next < 0 || i < next || i / RESTART_INTERVAL > next / RESTART_INTERVAL) {
+            seek(i / RESTART_INTERVAL);
+        }
+        while (next < i) {
+            decodeKey();
+            skipValue();
+        }
+    }
+
+    private void seek(final int restart) {
+        next = restart * RESTART_INTERVAL;
+        offset = data.getInt(restartOffsets + Integer.BYTES * restart);
+        key = null;
+    }
+
+    private ByteBuffer decodeKey() {
+        final int shared = readVarint(offset);
+        offset += varintSize(shared);
+        final int unshared = readVarint(offset);
+        offset += varintSize(unshared);
+
+        // Every key gets its own array, as cells outlive decoding of the following ones
+        final byte[] result = new byte[shared + unshared];
+        if (shared > 0) {
+            System.arraycopy(key, 0, result, 0, shared);
+        }
+        data.duplicate().position(offset).get(result, shared, unshared);
+        offset += unshared;
+        key = result;
+        next++;
+        return ByteBuffer.wrap(result);
+    }
+
+    private Value decodeValue() {
+        final long timeStamp = data.getLong(offset);
+        offset += Long.BYTES;
+        if (timeStamp < 0) {
+            return new Value(-timeStamp, null);
+        }
+        int valueSize = readVarint(offset);
+        offset += varintSize(valueSize);
+        long expiresAt = 0;
+        if ((valueSize & 1) != 0) {
+            expiresAt = data.getLong(offset);
+            offset += Long.BYTES;
+        }
+        valueSize >>>= 1;
+        final ByteBuffer value = data.duplicate().position(offset).limit(offset + valueSize).slice();
+        offset += valueSize;
+        return new Value(timeStamp, value, expiresAt);
+    }
+
+    private void skipValue() {
+        final long timeStamp = data.getLong(offset);
+        offset += Long.BYTES;
+        if (timeStamp >= 0) {
+            final int valueSize = readVarint(offset);
+            offset += varintSize(valueSize) + ((valueSize & 1) != 0 ? Long.BYTES : 0) + (valueSize >>> 1);
+        }
+    }
+
+    private int readVarint(final int position) {
+        int result = 0;
+        int shift = 0;
+        int cursor = position;
+        while (true) {
+            final byte b = data.get(cursor++);
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    static int varintSize(final int value) {
+        assert value >= 0;
+        int size = 1;
+        int rest = value >>> 7;
+        while (rest != 0) {
+            size++;
+            rest >>>= 7;
+        }
+        return size;
+    }
+
+    static void putVarint(
+            @NotNull final ByteBuffer buffer,
+            final int value) {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            buffer.put((byte) ((rest & 0x7F) | 0x80));
+            rest >>>= 7;
+        }
+        buffer.put((byte) rest);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removal of every key within the range written before the tombstone.
+ */
+final class RangeTombstone {
+    private final ByteBuffer from;
+    private final ByteBuffer to;
+    private final long timeStamp;
+
+    /**
+     * Tombstone of keys from the least key (inclusive) to the following key (exclusive).
+     * @param from least key of the range
+     * @param to key following the range or null if the range is unbounded
+     * @param timeStamp time of the removal
+     */
+    RangeTombstone(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final long timeStamp) {
+        this.from = from;
+        this.to = to;
+        this.timeStamp = timeStamp;
+    }
+
+    @NotNull
+    ByteBuffer from() {
+        return from.duplicate();
+    }
+
+    @Nullable
+    ByteBuffer to() {
+        return to == null ? null : to.duplicate();
+    }
+
+    long timeStamp() {
+        return timeStamp;
+    }
+
+    boolean contains(@NotNull final ByteBuffer key) {
+        return from.compareTo(key) <= 0 && (to == null || to.compareTo(key) > 0);
+    }
+
+    long sizeInBytes() {
+        return from.remaining() + (to == null ? 0 : to.remaining()) + Long.BYTES;
+    }
+}
@@ -0,0 +1,195 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Immutable set of range tombstones split into disjoint fragments ordered by keys,
+ * each one with the latest timestamp of tombstones covering it.
+ */
+final class RangeTombstones {
+    static final RangeTombstones EMPTY = new RangeTombstones(Collections.emptyList());
+
+    private final List<RangeTombstone> fragments;
+
+    private RangeTombstones(@NotNull final List<RangeTombstone> fragments) {
+        this.fragments = fragments;
+    }
+
+    /**
+     * Split possibly overlapping tombstones into fragments by a single sweep over their bounds.
+     * @param tombstones the tombstones
+     * @return fragments of the tombstones
+     */
+    @NotNull
+    static RangeTombstones of(@NotNull final Collection<RangeTombstone> tombstones) {
+        if (tombstones.isEmpty()) {
+            return EMPTY;
+        }
+
+        // Every bound of a tombstone starts a fragment
+        final TreeSet<ByteBuffer> bounds = new TreeSet<>();
+        for (final RangeTombstone tombstone : tombstones) {
+            bounds.add(tombstone.from());
+            final ByteBuffer to = tombstone.to();
+            if (to != null) {
+                bounds.add(to);
+            }
+        }
+        final List<RangeTombstone> byFrom = new ArrayList<>(tombstones);
+        byFrom.sort(Comparator.comparing(RangeTombstone::from));
+        // Tombstones started so far, the latest one first, which are dropped once they are passed
+        final PriorityQueue<RangeTombstone> open = new PriorityQueue<>(
+                Comparator.comparingLong(RangeTombstone::timeStamp).reversed());
+        final List<RangeTombstone> fragments = new ArrayList<>();
+        int next = 0;
+        for (final ByteBuffer bound : bounds) {
+            while (next < byFrom.size() && byFrom.get(next).from().compareTo(bound) <= 0) {
+                open.add(byFrom.get(next++));
+            }
+            while (!open.isEmpty() && !open.peek().contains(bound)) {
+                open.poll();
+            }
+            final ByteBuffer to = bounds.higher(bound);
+            if (!open.isEmpty()) {
+                fragments.add(new RangeTombstone(bound, to, open.peek().timeStamp()));
+            }
+        }
+        return ofFragments(fragments);
+    }
+
+    /**
+     * Take disjoint fragments, joining adjacent ones of the same tombstone back.
+     * @param fragments fragments in ascending order of keys
+     * @return fragments of the tombstones
+     */
+    @NotNull
+    static RangeTombstones ofFragments(@NotNull final Collection<RangeTombstone> fragments) {
+        if (fragments.isEmpty()) {
+            return EMPTY;
+        }
+        final List<RangeTombstone> result = new ArrayList<>(fragments.size());
+        RangeTombstone last = null;
+        for (final RangeTombstone fragment : fragments) {
+            if (last != null
+                    && last.timeStamp() == fragment.timeStamp()
+                    && fragment.from().equals(last.to())) {
+                last = new RangeTombstone(last.from(), fragment.to(), last.timeStamp());
+                result.set(result.size() - 1, last);
+            } else {
+                last = fragment;
+                result.add(last);
+            }
+        }
+        return new RangeTombstones(result);
+    }
+
+    /**
+     * Join fragments of several sets.
+     * @param sets sets of fragments
+     * @return fragments of every set
+     */
+    @NotNull
+    static RangeTombstones union(@NotNull final Collection<RangeTombstones> sets) {
+        final List<RangeTombstone> tombstones = new ArrayList<>();
+        for (final RangeTombstones set : sets) {
+            tombstones.addAll(set.fragments);
+        }
+        return of(tombstones);
+    }
+
+    boolean isEmpty() {
+        return fragments.isEmpty();
+    }
+
+    @NotNull
+    List<RangeTombstone> fragments() {
+        return Collections.unmodifiableList(fragments);
+    }
+
+    /**
+     * Get time of the latest removal of the key.
+     * @param key the key
+     * @return timestamp of the latest tombstone covering the key, 0 if there is none
+     */
+    long timeStampOf(@NotNull final ByteBuffer key) {
+        // Last fragment starting not after the key
+        int left = 0;
+        int right = fragments.size() - 1;
+        while (left <= right) {
+            final int mid = left + ((right - left) >> 1);
+            if (fragments.get(mid).from().compareTo(key) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        if (left == 0) {
+            return 0;
+        }
+        final RangeTombstone fragment = fragments.get(left - 1);
+        return fragment.contains(key) ? fragment.timeStamp() : 0;
+    }
+
+    /**
+     * Check whether the cell is removed by a later tombstone.
+     * @param cell the cell
+     * @return true if the cell is shadowed
+     */
+    boolean covers(@NotNull final Cell cell) {
+        return cell.getValue().getTimeStamp() < timeStampOf(cell.getKey());
+    }
+
+    /**
+     * Cut fragments to the range.
+     * @param lower least key of the range or null if the range is unbounded below
+     * @param upper key following the range or null if the range is unbounded above
+     * @return parts of fragments within the range
+     */
+    @NotNull
+    RangeTombstones clip(
+            @Nullable final ByteBuffer lower,
+            @Nullable final ByteBuffer upper) {
+        if (lower == null && upper == null || fragments.isEmpty()) {
+            return this;
+        }
+        final List<RangeTombstone> result = new ArrayList<>();
+        for (final RangeTombstone fragment : fragments) {
+            ByteBuffer from = fragment.from();
+            ByteBuffer to = fragment.to();
+            if (lower != null && from.compareTo(lower) < 0) {
+                from = lower;
+            }
+            if (upper != null && (to == null || to.compareTo(upper) > 0)) {
+                to = upper;
+            }
+            if (to == null || from.compareTo(to) < 0) {
+                result.add(new RangeTombstone(from, to, fragment.timeStamp()));
+            }
+        }
+        return new RangeTombstones(result);
+    }
+
+    @Nullable
+    ByteBuffer lowerBound() {
+        return fragments.isEmpty() ? null : fragments.get(0).from();
+    }
+
+    /**
+     * Get key following every fragment.
+     * @return the key or null if the last fragment is unbounded or there are no fragments
+     */
+    @Nullable
+    ByteBuffer upperBound() {
+        return fragments.isEmpty() ? null : fragments.get(fragments.size() - 1).to();
+    }
+}
@@ -0,0 +1,121 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges groups of SSTables of similar size.
+ *
+ * <p>Tables sorted by size are split into buckets, a table joins the bucket if its size is within
+ * the bucket ratio of the average size of the bucket, and every table smaller than the minimal size
+ * falls into the first bucket. Once a bucket has enough tables they are merged into one table,
+ * so every cell is rewritten about once per tier instead of once per flush.
+ */
+public final class SizeTieredCompactionStrategy implements CompactionStrategy {
+    private final int minThreshold;
+    private final int maxThreshold;
+    private final double bucketRatio;
+    private final long minTableSize;
+
+    /**
+     * Strategy of size-tiered compactions.
+     * @param minThreshold number of similar tables which triggers their compaction
+     * @param maxThreshold maximal number of tables to merge at once
+     * @param bucketRatio how many times sizes of tables in a bucket may differ from their average size
+     * @param minTableSize size in bytes below which all tables are considered similar
+     */
+    public SizeTieredCompactionStrategy(
+            final int minThreshold,
+            final int maxThreshold,
+            final double bucketRatio,
+            final long minTableSize) {
+        if (minThreshold < 2 || maxThreshold < minThreshold || bucketRatio < 1.0 || minTableSize < 0) {
+            throw new IllegalArgumentException("Invalid size-tiered compaction parameters");
+        }
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.bucketRatio = bucketRatio;
+        this.minTableSize = minTableSize;
+    }
+
+    /**
+     * Strategy of size-tiered compactions of 4 to 32 tables with bucket ratio 1.5 and 4 MB minimal size.
+     */
+    public SizeTieredCompactionStrategy() {
+        this(4, 32, 1.5, 4L * 1024 * 1024);
+    }
+
+    @Nullable
+    @Override
+    public Compaction pick(@NotNull final List<FileTable> tables) {
+        final List<FileTable> sorted = new ArrayList<>(tables);
+        sorted.sort(Comparator.comparingLong(FileTable::sizeInBytes));
+
+        // Buckets are visited from the smallest tables, which are the cheapest to merge
+        List<FileTable> bucket = new ArrayList<>();
+        long bucketSize = 0;
+        for (final FileTable table : sorted) {
+            final long size = table.sizeInBytes();
+            if (!bucket.isEmpty() && !fits(size, (double) bucketSize / bucket.size())) {
+                if (bucket.size() >= minThreshold) {
+                    break;
+                }
+                bucket = new ArrayList<>();
+                bucketSize = 0;
+            }
+            bucket.add(table);
+            bucketSize += size;
+        }
+        if (bucket.size() < minThreshold) {
+            return null;
+        }
+
+        final List<FileTable> inputs = bucket.subList(0, Math.min(bucket.size(), maxThreshold));
+        return new Compaction(new ArrayList<>(inputs), 0, Long.MAX_VALUE, isolated(tables, inputs));
+    }
+
+    private boolean fits(
+            final long size,
+            final double average) {
+        return (size < minTableSize && average < minTableSize)
+                || (size >= average / bucketRatio && size <= average * bucketRatio);
+    }
+
+    /**
+     * Merge every table, in parallel into fewer tables than it takes to trigger their compaction again.
+     */
+    @Nullable
+    @Override
+    public Compaction major(@NotNull final List<FileTable> tables) {
+        if (tables.isEmpty()) {
+            return null;
+        }
+        return new Compaction(tables, 0, Long.MAX_VALUE, true, minThreshold - 1);
+    }
+
+    /**
+     * Removals may be dropped only if no other table holds keys of the merged range,
+     * as the other tables may be older than the merged ones.
+     */
+    private static boolean isolated(
+            @NotNull final List<FileTable> tables,
+            @NotNull final List<FileTable> inputs) {
+        final ByteBuffer from = FileTable.lowerBound(inputs);
+        if (from == null) {
+            return true;
+        }
+        final ByteBuffer to = FileTable.upperBound(inputs);
+
+        for (final FileTable table : tables) {
+            if (!inputs.contains(table) && table.overlaps(from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
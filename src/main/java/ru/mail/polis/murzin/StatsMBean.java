@@ -0,0 +1,102 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import java.io.File;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Read-only MBean with an attribute for every entry of {@link ru.mail.polis.DAO#stats()}.
+ */
+final class StatsMBean implements DynamicMBean {
+    private final Supplier<Map<String, Number>> stats;
+
+    StatsMBean(@NotNull final Supplier<Map<String, Number>> stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Name of the MBean of a DAO.
+     * @param base working directory of the DAO
+     * @return the name
+     * @throws MalformedObjectNameException never, as the directory is quoted
+     */
+    static ObjectName nameOf(@NotNull final File base) throws MalformedObjectNameException {
+        return new ObjectName("ru.mail.polis:type=DAO,directory=" + ObjectName.quote(base.getAbsolutePath()));
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final Number value = stats.get().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Stats are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final Map<String, Number> current = stats.get();
+        final AttributeList result = new AttributeList();
+        for (final String attribute : attributes) {
+            final Number value = current.get(attribute);
+            if (value != null) {
+                result.add(new Attribute(attribute, value));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(
+            final String actionName,
+            final Object[] params,
+            final String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final Map<String, Number> current = stats.get();
+        final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[current.size()];
+        int index = 0;
+        for (final Map.Entry<String, Number> entry : current.entrySet()) {
+            attributes[index++] = new MBeanAttributeInfo(
+                    entry.getKey(),
+                    entry.getValue().getClass().getName(),
+                    entry.getKey(),
+                    true,
+                    false,
+                    false);
+        }
+        return new MBeanInfo(
+                getClass().getName(),
+                "Stats of LSM DAO",
+                attributes,
+                null,
+                new MBeanOperationInfo[0],
+                null);
+    }
+}
@@ -1,6 +1,8 @@
 package ru.mail.polis.murzin;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
@@ -8,4 +10,27 @@ import java.util.Iterator;
 public interface Table {
     @NotNull
     Iterator<Cell> iterator(@NotNull ByteBuffer from) throws IOException;
+
+    /**
+     * Iterate over cells within the range in either direction.
+     * @param from least key of the range (inclusive)
+     * @param to key following the range (exclusive) or null if the range is unbounded
+     * @param descending whether to start from the greatest key
+     * @return cells in ascending or descending order of keys
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    Iterator<Cell> iterator(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to,
+            boolean descending) throws IOException;
+
+    /**
+     * Look up the cell with exactly given key.
+     * @param key key to look for
+     * @return value or tombstone of the key, null if the table has no cell with the key
+     * @throws IOException if read is failed
+     */
+    @Nullable
+    Value get(@NotNull ByteBuffer key) throws IOException;
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reader of a particular on-disk format of {@link FileTable}, which addresses cells by row number.
+ */
+interface TableReader {
+    int rows();
+
+    /**
+     * Get timestamp of the freshest cell.
+     * @return the timestamp or {@link Long#MAX_VALUE} if the format doesn't store it
+     */
+    long maxTimeStamp();
+
+    /**
+     * Get range tombstones stored next to the cells.
+     * @return disjoint tombstones in ascending order of keys, empty if the format doesn't store them
+     */
+    @NotNull
+    List<RangeTombstone> rangeTombstones();
+
+    /**
+     * Find the first row whose key is not less than given one.
+     * @param key key to look for
+     * @return row number, {@link #rows()} if every key is less
+     * @throws IOException if read is failed
+     */
+    int position(@NotNull ByteBuffer key) throws IOException;
+
+    /**
+     * Look up the cell with exactly given key.
+     * @param key key to look for
+     * @return value or tombstone of the key, null if there is no cell with the key
+     * @throws IOException if read is failed
+     */
+    @Nullable
+    Value get(@NotNull ByteBuffer key) throws IOException;
+
+    /**
+     * Look up cells with exactly given keys in a single forward pass.
+     * @param keys keys to look for in ascending order
+     * @return value or tombstone of every key at its index, null for keys without a cell
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    Value[] getAll(@NotNull List<ByteBuffer> keys) throws IOException;
+
+    /**
+     * Sample keys which split the cells into parts of about equal size.
+     * @return copies of keys in ascending order, empty if there are too few cells to split them
+     * @throws IOException if read is failed
+     */
+    @NotNull
+    List<ByteBuffer> samples() throws IOException;
+
+    @NotNull
+    Iterator<Cell> iterator(int row);
+
+    /**
+     * Iterate from the row towards the first one.
+     * @param row row to start from
+     * @return cells in descending order of keys
+     */
+    @NotNull
+    Iterator<Cell> descendingIterator(int row);
+}
@@ -0,0 +1,114 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of tables of a DAO: the active MemTable,
+ * frozen MemTables waiting to be flushed and SSTables.
+ */
+final class TableSet {
+    @NotNull
+    final MemTable memTable;
+    @NotNull
+    final List<MemTable> flushing;
+    @NotNull
+    final List<FileTable> files;
+    // SSTables in descending order of their max timestamps for point lookups
+    @NotNull
+    final List<FileTable> freshestFirst;
+    // Range tombstones of every SSTable
+    @NotNull
+    final RangeTombstones rangeTombstones;
+    final int generation;
+
+    TableSet(
+            @NotNull final MemTable memTable,
+            @NotNull final List<MemTable> flushing,
+            @NotNull final List<FileTable> files,
+            final int generation) {
+        this.memTable = memTable;
+        this.flushing = Collections.unmodifiableList(flushing);
+        this.files = Collections.unmodifiableList(files);
+        final List<FileTable> sorted = new ArrayList<>(files);
+        sorted.sort((a, b) -> Long.compare(b.maxTimeStamp(), a.maxTimeStamp()));
+        this.freshestFirst = Collections.unmodifiableList(sorted);
+        final List<RangeTombstones> sets = new ArrayList<>();
+        for (final FileTable file : files) {
+            if (!file.rangeTombstones().isEmpty()) {
+                sets.add(file.rangeTombstones());
+            }
+        }
+        this.rangeTombstones = RangeTombstones.union(sets);
+        this.generation = generation;
+    }
+
+    /**
+     * Tables with the same SSTables as the previous ones, which share their order and range tombstones.
+     */
+    private TableSet(
+            @NotNull final MemTable memTable,
+            @NotNull final List<MemTable> flushing,
+            @NotNull final TableSet previous,
+            final int generation) {
+        this.memTable = memTable;
+        this.flushing = Collections.unmodifiableList(flushing);
+        this.files = previous.files;
+        this.freshestFirst = previous.freshestFirst;
+        this.rangeTombstones = previous.rangeTombstones;
+        this.generation = generation;
+    }
+
+    /**
+     * Freeze the active MemTable and allocate generation for its SSTable.
+     * @return snapshot with empty active MemTable
+     */
+    @NotNull
+    TableSet freeze() {
+        final List<MemTable> newFlushing = new ArrayList<>(flushing);
+        newFlushing.add(memTable);
+        return new TableSet(new MemTable(), newFlushing, this, generation + 1);
+    }
+
+    /**
+     * Replace flushed MemTable with its SSTable.
+     * @param frozen flushed MemTable
+     * @param table SSTable with the contents of frozen
+     * @return snapshot with table instead of frozen
+     */
+    @NotNull
+    TableSet flushed(
+            @NotNull final MemTable frozen,
+            @NotNull final FileTable table) {
+        final List<MemTable> newFlushing = new ArrayList<>(flushing);
+        newFlushing.removeIf(m -> m == frozen);
+        final List<FileTable> newFiles = new ArrayList<>(files);
+        newFiles.add(table);
+        return new TableSet(memTable, newFlushing, newFiles, generation);
+    }
+
+    @NotNull
+    TableSet nextGeneration() {
+        return new TableSet(memTable, flushing, this, generation + 1);
+    }
+
+    /**
+     * Replace compacted SSTables with the result of compaction.
+     * @param compacted SSTables merged by compaction
+     * @param tables SSTables with merged contents
+     * @return snapshot with tables instead of compacted ones
+     */
+    @NotNull
+    TableSet compacted(
+            @NotNull final Collection<FileTable> compacted,
+            @NotNull final Collection<FileTable> tables) {
+        final List<FileTable> newFiles = new ArrayList<>(files);
+        newFiles.removeAll(compacted);
+        newFiles.addAll(tables);
+        return new TableSet(memTable, flushing, newFiles, generation);
+    }
+}
@@ -0,0 +1,301 @@
+package ru.mail.polis.murzin;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams ascending cells into blocks of the block-based format described by {@link BlockTableReader}.
+ */
+final class TableWriter implements Closeable {
+    private static final int OUTPUT_SIZE = 1024 * 1024;
+    // Flusher and compactor threads live long, so every one keeps its output buffer between tables
+    private static final ThreadLocal<ByteBuffer> OUTPUT_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(OUTPUT_SIZE));
+
+    private final File file;
+    private final FileChannel fc;
+    private final int blockSize;
+    private final boolean sync;
+    private final Codec codec;
+    private final ByteBuffer output;
+    private final BloomFilter filter;
+    private ByteBuffer block;
+    private byte[] compressed = new byte[0];
+    private int[] restartOffsets = new int[16];
+    private int restarts;
+    private int cells;
+    private ByteBuffer separator;
+    private ByteBuffer lastKey;
+    private ByteBuffer index = ByteBuffer.allocate(4096);
+    private int blocks;
+    private int rows;
+    private long offset;
+    private long maxTimeStamp;
+
+    /**
+     * Writer of a new table.
+     * @param file file of the table
+     * @param config block size, codec and durability of the table
+     * @param expectedRows number of rows to size the Bloom filter for
+     * @throws IOException if the file can`t be created
+     */
+    TableWriter(
+            @NotNull final File file,
+            @NotNull final Config config,
+            final long expectedRows) throws IOException {
+        this.file = file;
+        this.blockSize = config.getBlockSize();
+        this.sync = config.isSyncTables();
+        this.codec = config.getCodec();
+        this.output = OUTPUT_BUFFER.get();
+        output.clear();
+        this.block = ByteBuffer.allocate(blockSize * 2);
+        this.filter = BloomFilter.create(expectedRows);
+        this.fc = FileChannel.open(
+                file.toPath(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+    }
+
+    void append(@NotNull final Cell cell) throws IOException {
+        final ByteBuffer key = cell.getKey();
+        final Value value = cell.getValue();
+        boolean restart = cells % PrefixBlock.RESTART_INTERVAL == 0;
+        int shared = restart ? 0 : commonPrefix(lastKey, key);
+        int size = cellSize(shared, key.remaining(), value);
+        if (cells > 0 && block.position() + size + Integer.BYTES * (restarts + 3) > blockSize) {
+            finishBlock();
+            restart = true;
+            shared = 0;
+            size = cellSize(0, key.remaining(), value);
+        }
+
+        if (cells == 0) {
+            separator = separator(lastKey, key);
+        }
+        lastKey = key;
+        if (restart) {
+            if (restarts == restartOffsets.length) {
+                restartOffsets = Arrays.copyOf(restartOffsets, restarts * 2);
+            }
+            restartOffsets[restarts++] = block.position();
+        }
+        cells++;
+        maxTimeStamp = Math.max(maxTimeStamp, value.getTimeStamp());
+        block = ensure(block, size);
+        PrefixBlock.putVarint(block, shared);
+        PrefixBlock.putVarint(block, key.remaining() - shared);
+        block.put(key.duplicate().position(key.position() + shared));
+        if (value.isRemoved()) {
+            block.putLong(-value.getTimeStamp());
+        } else {
+            final ByteBuffer data = value.getData();
+            block.putLong(value.getTimeStamp());
+            PrefixBlock.putVarint(block, data.remaining() << 1 | (value.isExpiring() ? 1 : 0));
+            if (value.isExpiring()) {
+                block.putLong(value.getExpiresAt());
+            }
+            block.put(data);
+        }
+
+        rows++;
+        filter.add(BloomFilter.hash(key));
+    }
+
+    private static int cellSize(
+            final int shared,
+            final int keySize,
+            @NotNull final Value value) {
+        final int unshared = keySize - shared;
+        int size = PrefixBlock.varintSize(shared) + PrefixBlock.varintSize(unshared) + unshared + Long.BYTES;
+        if (!value.isRemoved()) {
+            final int valueSize = value.getData().remaining();
+            size += PrefixBlock.varintSize(valueSize << 1) + valueSize + (value.isExpiring() ? Long.BYTES : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Get size of the table written so far.
+     * @return size in bytes without index and footer
+     */
+    long size() {
+        return offset + block.position();
+    }
+
+    private void finishBlock() throws IOException {
+        block = ensure(block, Integer.BYTES * (restarts + 2));
+        for (int i = 0; i < restarts; i++) {
+            block.putInt(restartOffsets[i]);
+        }
+        block.putInt(restarts);
+        block.putInt(cells);
+        block.flip();
+        final int rawSize = block.remaining();
+        final int size = emitCompressed(block);
+
+        index = ensure(index, Long.BYTES + Integer.BYTES * 4 + separator.remaining());
+        index.putLong(offset);
+        index.putInt(size);
+        index.putInt(rawSize);
+        index.putInt(rows - cells);
+        index.putInt(separator.remaining());
+        index.put(separator);
+
+        offset += size;
+        blocks++;
+        cells = 0;
+        restarts = 0;
+        separator = null;
+        block.clear();
+    }
+
+    /**
+     * Shortest key which is greater than the last key of the previous block
+     * and not greater than the first key of the next one, so huge keys don't bloat the index.
+     */
+    private static ByteBuffer separator(
+            final ByteBuffer previous,
+            @NotNull final ByteBuffer next) {
+        if (previous == null) {
+            return next.duplicate().limit(next.position());
+        }
+        final int common = commonPrefix(previous, next);
+        return next.duplicate().limit(next.position() + Math.min(common + 1, next.remaining()));
+    }
+
+    private static int commonPrefix(
+            @NotNull final ByteBuffer left,
+            @NotNull final ByteBuffer right) {
+        final int length = Math.min(left.remaining(), right.remaining());
+        int common = 0;
+        while (common < length && left.get(left.position() + common) == right.get(right.position() + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    /**
+     * Write the last block, sparse index, range tombstones, footer and Bloom filter,
+     * with a single gathering write of whatever is still buffered.
+     * @param tombstones range tombstones of the table
+     * @throws IOException if write is failed
+     */
+    void finish(@NotNull final RangeTombstones tombstones) throws IOException {
+        if (cells > 0) {
+            finishBlock();
+        }
+
+        // Range tombstones follow the index, so both are written by a single buffer
+        final long indexOffset = offset;
+        final int indexSize = index.position();
+        for (final RangeTombstone tombstone : tombstones.fragments()) {
+            final ByteBuffer from = tombstone.from();
+            final ByteBuffer to = tombstone.to();
+            final int toSize = to == null ? 0 : to.remaining();
+            index = ensure(index, Integer.BYTES * 2 + from.remaining() + toSize + Long.BYTES);
+            index.putInt(from.remaining());
+            index.put(from);
+            if (to == null) {
+                index.putInt(-1);
+            } else {
+                index.putInt(to.remaining());
+                index.put(to);
+            }
+            index.putLong(tombstone.timeStamp());
+            maxTimeStamp = Math.max(maxTimeStamp, tombstone.timeStamp());
+        }
+        index.flip();
+        final int tombstonesSize = index.remaining() - indexSize;
+
+        final ByteBuffer footer = ByteBuffer.allocate(BlockTableReader.FOOTER_SIZE);
+        footer.putLong(indexOffset);
+        footer.putInt(indexSize);
+        footer.putInt(blocks);
+        footer.putLong(rows);
+        footer.putInt(codec.id());
+        footer.putLong(maxTimeStamp);
+        footer.putInt(tombstonesSize);
+        footer.putInt(FileTable.VERSION);
+        footer.putLong(FileTable.MAGIC);
+        footer.flip();
+        output.flip();
+        writeFully(output, index, footer);
+        output.clear();
+        if (sync) {
+            fc.force(true);
+        }
+
+        filter.write(FileTable.filterOf(file), sync);
+    }
+
+    /**
+     * Stage the block compressed unless compression saves too little to pay for decompression.
+     * @return size of the stored block
+     */
+    private int emitCompressed(@NotNull final ByteBuffer raw) throws IOException {
+        final int rawSize = raw.remaining();
+        if (codec != Codec.NONE) {
+            final int maxSize = codec.maxCompressedLength(rawSize);
+            if (compressed.length < maxSize) {
+                compressed = new byte[maxSize];
+            }
+            final int size = codec.compress(raw.array(), raw.arrayOffset() + raw.position(), rawSize, compressed, 0);
+            if (size < rawSize - rawSize / 8) {
+                emit(ByteBuffer.wrap(compressed, 0, size));
+                return size;
+            }
+        }
+        emit(raw);
+        return rawSize;
+    }
+
+    /**
+     * Stage the block in the output buffer, which is written once it is full.
+     */
+    private void emit(@NotNull final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() > output.remaining()) {
+            output.flip();
+            if (buffer.remaining() > output.capacity()) {
+                writeFully(output, buffer);
+                output.clear();
+                return;
+            }
+            writeFully(output);
+            output.clear();
+        }
+        output.put(buffer);
+    }
+
+    private void writeFully(@NotNull final ByteBuffer... buffers) throws IOException {
+        final ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            fc.write(buffers);
+        }
+    }
+
+    private static ByteBuffer ensure(
+            @NotNull final ByteBuffer buffer,
+            final int size) {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+        final ByteBuffer result = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        result.put(buffer);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.clear();
+        fc.close();
+    }
+}
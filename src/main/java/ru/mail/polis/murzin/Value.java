@@ -3,12 +3,16 @@ package ru.mail.polis.murzin;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class Value implements Comparable<Value> {
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
     private final long ts;
     private final ByteBuffer data;
-    private static long lastTime;
-    private static long additionalTime;
+    // Time in the units of timestamps, 0 if the value never expires
+    private final long expiresAt;
+    private static final AtomicLong LAST_TIME = new AtomicLong();
 
     /**
      * Value which hold data with timestamp.
@@ -16,15 +20,41 @@ public final class Value implements Comparable<Value> {
      * @param data stored data
      */
     public Value(final long ts, final ByteBuffer data) {
+        this(ts, data, 0);
+    }
+
+    /**
+     * Value which hold data with timestamp and expires at given time.
+     * @param ts timestamp
+     * @param data stored data
+     * @param expiresAt time of expiry in nanoseconds or 0 if the value never expires
+     */
+    public Value(final long ts, final ByteBuffer data, final long expiresAt) {
         assert ts >= 0;
+        assert expiresAt >= 0;
         this.ts = ts;
         this.data = data;
+        this.expiresAt = expiresAt;
     }
 
     public static Value of(final ByteBuffer data) {
         return new Value(getCurrentTimeNanos(), data.duplicate());
     }
 
+    /**
+     * Value which expires after given time to live.
+     * @param data stored data
+     * @param ttlMillis time to live in milliseconds
+     * @return the value
+     */
+    public static Value of(final ByteBuffer data, final long ttlMillis) {
+        assert ttlMillis > 0;
+        final long ts = getCurrentTimeNanos();
+        // Huge TTLs are capped instead of overflowing
+        final long ttl = Math.min(ttlMillis, (Long.MAX_VALUE - ts) / NANOS_PER_MILLI) * NANOS_PER_MILLI;
+        return new Value(ts, data.duplicate(), ts + ttl);
+    }
+
     public static Value tombstone() {
         return new Value(getCurrentTimeNanos(), null);
     }
@@ -53,16 +83,46 @@ public final class Value implements Comparable<Value> {
         return ts;
     }
 
+    public boolean isExpiring() {
+        return expiresAt != 0;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Check whether the value has data at the time.
+     * @param time time in nanoseconds
+     * @return false for tombstones and values expired by the time
+     */
+    public boolean isAlive(final long time) {
+        return data != null && !isExpired(time);
+    }
+
+    /**
+     * Check whether the value is expired at the time.
+     * @param time time in nanoseconds
+     * @return true if the value expires not later than the time
+     */
+    public boolean isExpired(final long time) {
+        return expiresAt != 0 && expiresAt <= time;
+    }
+
     /**
-     * Get current time in nanoseconds.
+     * Get current time in nanoseconds, unique and increasing across all threads.
      * @return current time in nanoseconds
      */
     public static long getCurrentTimeNanos() {
-        final long currentTime = System.currentTimeMillis();
-        if (currentTime != lastTime) {
-            additionalTime = 0;
-            lastTime = currentTime;
-        }
-        return currentTime * 1_000_000 + ++additionalTime;
+        final long currentTime = System.currentTimeMillis() * 1_000_000;
+        return LAST_TIME.updateAndGet(last -> Math.max(last + 1, currentTime));
+    }
+
+    /**
+     * Get current time in nanoseconds to check expiry of values at, which is read without taking a timestamp.
+     * @return current time in nanoseconds, which may repeat and fall behind timestamps already taken
+     */
+    public static long getExpiryTimeNanos() {
+        return System.currentTimeMillis() * NANOS_PER_MILLI;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that compaction does not disturb open iterators.
+ */
+class BackgroundCompactionTest extends TestBase {
+    @Test
+    void iteratorSurvivesCompaction(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 3; i++) {
+            try (DAO dao = DAOFactory.create(data)) {
+                for (int j = 0; j < 100; j++) {
+                    final ByteBuffer key = randomKey();
+                    final ByteBuffer value = randomValue();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            dao.compact();
+            assertEquals(1, dao.stats().get("sstable.count").intValue());
+            assertTrue(dao.stats().get("sstable.obsolete").intValue() > 0);
+
+            assertRecords(expected, records);
+
+            // Compacted tables are deleted once the iterator is exhausted
+            assertEquals(0, dao.stats().get("sstable.obsolete").intValue());
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void manyFlushes(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int i = 0; i < 30; i++) {
+            try (DAO dao = DAOFactory.create(data)) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertContains(dao, expected);
+            assertTrue(dao.stats().get("sstable.count").intValue() < 30);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.FullCompactionStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks Bloom filters of SSTables.
+ */
+class BloomFilterTest extends TestBase {
+    private static final int COUNT = 5000;
+
+    @Test
+    void noFalseNegatives(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = fill(data);
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertFound(dao, keys);
+        }
+    }
+
+    @Test
+    void missesSkipTables(@TempDir File data) throws IOException {
+        fill(data);
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertTrue(dao.stats().get("sstable.count").intValue() > 1);
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = randomKey();
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+            // About 1% of misses read a table
+            assertTrue(dao.stats().get("get.tables.mean").doubleValue() < 0.5);
+        }
+    }
+
+    @Test
+    void compactedTables(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = fill(data);
+        try (DAO dao = DAOFactory.create(data, config())) {
+            dao.compact();
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = randomKey();
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+            // Filters of compacted tables are sized up front by rows of the merged ones
+            assertTrue(dao.stats().get("get.tables.mean").doubleValue() < 0.5);
+            assertFound(dao, keys);
+        }
+    }
+
+    @Test
+    void brokenFilters(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = fill(data);
+        final File[] filters = data.listFiles((dir, name) -> name.endsWith(".bloom"));
+        assertTrue(filters != null && filters.length > 1);
+        for (int i = 0; i < filters.length; i++) {
+            try (RandomAccessFile file = new RandomAccessFile(filters[i], "rw")) {
+                // Either empty or cut in the middle of the words
+                file.setLength(i % 2 == 0 ? 0 : file.length() / 2);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertFound(dao, keys);
+        }
+    }
+
+    private static Config config() {
+        return smallMemTable()
+                .compactionStrategy(new FullCompactionStrategy(Integer.MAX_VALUE))
+                .build();
+    }
+
+    private static List<ByteBuffer> fill(final File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>(COUNT);
+        try (DAO dao = DAOFactory.create(data, config())) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, key);
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static void assertFound(
+            final DAO dao,
+            final List<ByteBuffer> keys) throws IOException {
+        for (final ByteBuffer key : keys) {
+            assertEquals(key, dao.get(key));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.Durability;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that acknowledged writes survive a DAO which was never closed.
+ */
+class CommitLogTest extends TestBase {
+    @Test
+    void recoverWithoutClose(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final ByteBuffer removed = randomKey();
+
+        // Write and "crash" without close
+        final DAO crashed = DAOFactory.create(data, batch());
+        crashed.upsert(removed, randomValue());
+        crashed.upsert(key, value);
+        crashed.remove(removed);
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+
+        // Replayed data is flushed on close
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+    }
+
+    @Test
+    void ignoreTornTail(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+
+        final DAO crashed = DAOFactory.create(data, batch());
+        crashed.upsert(key, value);
+
+        // Half-written record at the end of the log
+        final File[] logs = data.listFiles((dir, name) -> name.endsWith("_CommitLog.log"));
+        assertTrue(logs != null && logs.length == 1);
+        try (FileChannel ch = FileChannel.open(logs[0].toPath(), StandardOpenOption.APPEND)) {
+            ch.write(randomBuffer(100));
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void recoverRolledSegments(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> values = new HashMap<>();
+
+        // Segments are rolled many times, previous ones are forced after writers go on
+        final DAO crashed = DAOFactory.create(data, smallMemTable().durability(Durability.BATCH).build());
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer key = key(i);
+            final ByteBuffer value = randomValue();
+            crashed.upsert(key, value);
+            values.put(key, value);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertContains(dao, values);
+        }
+    }
+
+    private static Config batch() {
+        return Config.builder(DAOFactory.MAX_HEAP / 60)
+                .durability(Durability.BATCH)
+                .build();
+    }
+}
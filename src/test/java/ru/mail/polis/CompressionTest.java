@@ -0,0 +1,104 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Codec;
+import ru.mail.polis.murzin.Config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks SSTables with compressed blocks.
+ */
+class CompressionTest extends TestBase {
+    @Test
+    void compressible(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data, compressed(false));
+        assertTrue(Files.directorySize(data) < rawSize(expected) / 2);
+
+        try (DAO dao = DAOFactory.create(data, compressed(false))) {
+            assertContains(dao, expected);
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, compressed(true))) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void incompressible(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, compressed(false))) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, compressed(false))) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void changeCodec(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data, Config.builder(DAOFactory.MAX_HEAP / 60).build());
+        expected.putAll(fill(data, compressed(false)));
+        try (DAO dao = DAOFactory.create(data, compressed(false))) {
+            assertContains(dao, expected);
+            dao.compact();
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertContains(dao, expected);
+        }
+    }
+
+    private static Map<ByteBuffer, ByteBuffer> fill(
+            final File data,
+            final Config config) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = json(i);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        return expected;
+    }
+
+    private static ByteBuffer json(final int i) {
+        final String value = "{\"id\":" + i
+                + ",\"name\":\"user" + ThreadLocalRandom.current().nextInt(100)
+                + "\",\"tags\":[\"alpha\",\"beta\",\"gamma\"],\"active\":true,\"comment\":\""
+                + "lorem ipsum dolor sit amet lorem ipsum dolor sit amet\"}";
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long rawSize(final Map<ByteBuffer, ByteBuffer> entries) {
+        long size = 0;
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : entries.entrySet()) {
+            size += entry.getKey().remaining() + entry.getValue().remaining();
+        }
+        return size;
+    }
+
+    private static Config compressed(final boolean mapped) {
+        return Config.builder(DAOFactory.MAX_HEAP / 60)
+                .codec(Codec.LZ4)
+                .mapped(mapped)
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the DAO shared by many threads.
+ */
+class ConcurrencyTest extends TestBase {
+    private static final int THREADS = 8;
+    private static final int KEYS = 1000;
+
+    @Test
+    void concurrentWritesAndReads(@TempDir File data) throws Exception {
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                tasks.add(() -> {
+                    for (int j = 0; j < KEYS; j++) {
+                        final ByteBuffer key = randomKey();
+                        final ByteBuffer value = randomValue();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                        assertEquals(value, dao.get(key));
+                        if (j % 10 == 0) {
+                            dao.remove(key);
+                            expected.remove(key);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (final Future<Void> result : executor.invokeAll(tasks)) {
+                get(result);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            int count = 0;
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            while (records.hasNext()) {
+                final Record record = records.next();
+                assertEquals(expected.get(record.getKey()), record.getValue());
+                count++;
+            }
+            assertEquals(expected.size(), count);
+        }
+    }
+
+    private static void get(final Future<Void> result) throws Exception {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (Exception) e.getCause();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks values with time to live.
+ */
+class ExpiryTest extends TestBase {
+    private static final long TTL = 200;
+
+    @Test
+    void expires(@TempDir File data) throws IOException, InterruptedException {
+        final ByteBuffer expiring = randomKey();
+        final ByteBuffer overwritten = randomKey();
+        final ByteBuffer permanent = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(expiring, value, TTL);
+            dao.upsert(overwritten, randomValue());
+            dao.upsert(overwritten, value, TTL);
+            dao.upsert(permanent, value);
+            assertEquals(value, dao.get(expiring));
+            assertEquals(value, dao.get(overwritten));
+
+            Thread.sleep(TTL * 2);
+            assertExpired(dao, expiring, overwritten, permanent, value);
+            dao.compact();
+            assertExpired(dao, expiring, overwritten, permanent, value);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertExpired(dao, expiring, overwritten, permanent, value);
+        }
+    }
+
+    @Test
+    void survivesReopen(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value, 60 * 60 * 1000);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            dao.compact();
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void compactionDropsExpired(@TempDir File data) throws IOException, InterruptedException {
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(randomKey(), randomValue(), TTL);
+            }
+            dao.compact();
+            final long size = Files.directorySize(data);
+
+            Thread.sleep(TTL * 2);
+            dao.compact();
+            assertTrue(Files.directorySize(data) < size / 10);
+            assertFalse(dao.iterator(ByteBuffer.allocate(0)).hasNext());
+        }
+    }
+
+    @Test
+    void invalidTtl(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            assertThrows(IllegalArgumentException.class, () -> dao.upsert(randomKey(), randomValue(), 0));
+        }
+    }
+
+    private static void assertExpired(
+            final DAO dao,
+            final ByteBuffer expiring,
+            final ByteBuffer overwritten,
+            final ByteBuffer permanent,
+            final ByteBuffer value) throws IOException {
+        assertThrows(NoSuchElementException.class, () -> dao.get(expiring));
+        // Expired value still shadows the older one
+        assertThrows(NoSuchElementException.class, () -> dao.get(overwritten));
+        assertEquals(value, dao.get(permanent));
+
+        final Map<ByteBuffer, ByteBuffer> values = dao.getAll(Arrays.asList(expiring, overwritten, permanent));
+        assertEquals(1, values.size());
+        assertEquals(value, values.get(permanent));
+
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        assertEquals(permanent, records.next().getKey());
+        assertFalse(records.hasNext());
+    }
+}
@@ -0,0 +1,36 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks reads while MemTables are flushed in background.
+ */
+class FlushTest extends TestBase {
+    @Test
+    void readWhileFlushing(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().maxPendingFlushes(2).build())) {
+            for (int i = 0; i < 5000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+                assertEquals(value, dao.get(key));
+            }
+            assertContains(dao, expected);
+        }
+
+        try (DAO dao = DAOFactory.create(data, smallMemTable().maxPendingFlushes(2).build())) {
+            assertContains(dao, expected);
+        }
+    }
+}
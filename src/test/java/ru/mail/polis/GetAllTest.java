@@ -0,0 +1,83 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks lookups of many keys at once.
+ */
+class GetAllTest extends TestBase {
+    private static final int COUNT = 20000;
+
+    @Test
+    void manyTables(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = key(i);
+                if (i % 5 == 0) {
+                    dao.remove(key(i / 2));
+                    expected.remove(key(i / 2));
+                }
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+
+            // Present, removed and absent keys in random order, including duplicates
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = 0; i < COUNT + 100; i += 7) {
+                keys.add(key(i));
+                keys.add(key(i));
+                keys.add(ByteBuffer.wrap((i + "!").getBytes(StandardCharsets.UTF_8)));
+            }
+            Collections.shuffle(keys);
+            assertFound(dao, keys, expected);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = COUNT; i >= 0; i -= 3) {
+                keys.add(key(i));
+            }
+            assertFound(dao, keys, expected);
+            dao.compact();
+            assertFound(dao, keys, expected);
+        }
+    }
+
+    @Test
+    void empty(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            assertTrue(dao.getAll(Collections.emptyList()).isEmpty());
+            assertTrue(dao.getAll(Collections.singletonList(randomKey())).isEmpty());
+        }
+    }
+
+    private static void assertFound(
+            final DAO dao,
+            final List<ByteBuffer> keys,
+            final Map<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> found = dao.getAll(keys);
+        final Map<ByteBuffer, ByteBuffer> present = new HashMap<>();
+        for (final ByteBuffer key : keys) {
+            final ByteBuffer value = expected.get(key);
+            if (value != null) {
+                present.put(key, value);
+            }
+        }
+        assertEquals(present, found);
+    }
+}
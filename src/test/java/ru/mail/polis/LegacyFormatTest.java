@@ -0,0 +1,101 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that SSTables of the original format without footer are still read.
+ */
+class LegacyFormatTest extends TestBase {
+    private static final int COUNT = 1000;
+
+    @Test
+    void read(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = writeLegacy(data);
+        try (DAO dao = DAOFactory.create(data)) {
+            assertContains(dao, expected);
+            assertThrows(NoSuchElementException.class, () -> dao.get(key(0)));
+        }
+    }
+
+    @Test
+    void overwriteAndCompact(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = writeLegacy(data);
+        try (DAO dao = DAOFactory.create(data)) {
+            final ByteBuffer value = randomValue();
+            dao.upsert(key(0), value);
+            expected.put(key(0), value);
+            dao.remove(key(1));
+            expected.remove(key(1));
+            assertContains(dao, expected);
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertContains(dao, expected);
+        }
+    }
+
+    /**
+     * Write a table in the original format: every cell is {@code [key size][key][timestamp][value size][value]}
+     * with negated timestamp and no value for tombstones, followed by offsets of cells and their number.
+     * Every tenth key is removed.
+     */
+    private static NavigableMap<ByteBuffer, ByteBuffer> writeLegacy(final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final List<Long> offsets = new ArrayList<>(COUNT);
+        try (FileChannel fc = FileChannel.open(
+                new File(data, "1_SSTable.dat").toPath(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (int i = 0; i < COUNT; i++) {
+                offsets.add(offset);
+                final ByteBuffer key = key(i);
+                final boolean removed = i % 10 == 0;
+                final ByteBuffer value = randomValue();
+                final ByteBuffer cell = ByteBuffer.allocate(
+                        Integer.BYTES + key.remaining() + Long.BYTES
+                                + (removed ? 0 : Integer.BYTES + value.remaining()));
+                cell.putInt(key.remaining()).put(key.duplicate());
+                if (removed) {
+                    cell.putLong(-(i + 1));
+                } else {
+                    cell.putLong(i + 1).putInt(value.remaining()).put(value.duplicate());
+                    expected.put(key, value);
+                }
+                offset += write(fc, cell.flip());
+            }
+            final ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES * (COUNT + 1));
+            for (final long cellOffset : offsets) {
+                trailer.putLong(cellOffset);
+            }
+            trailer.putLong(COUNT);
+            write(fc, trailer.flip());
+        }
+        return expected;
+    }
+
+    private static int write(
+            final FileChannel fc,
+            final ByteBuffer buffer) throws IOException {
+        final int size = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            fc.write(buffer);
+        }
+        return size;
+    }
+}
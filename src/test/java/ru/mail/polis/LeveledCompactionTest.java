@@ -0,0 +1,81 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.LeveledCompactionStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks contents of the DAO which is compacted into levels.
+ */
+class LeveledCompactionTest extends TestBase {
+    @Test
+    void overwriteAndRemove(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, leveled())) {
+            for (int i = 0; i < 3000; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, randomValue());
+                expected.put(key, randomValue());
+            }
+            // Overwrite and remove keys which are spread over the levels by now
+            final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.entrySet().iterator();
+            for (int i = 0; entries.hasNext(); i++) {
+                final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+                if (i % 3 == 0) {
+                    dao.remove(entry.getKey());
+                    entries.remove();
+                } else {
+                    dao.upsert(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, leveled())) {
+            assertContains(dao, expected);
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        assertTrue(levelFiles(data) > 0);
+    }
+
+    @Test
+    void compactRemoved(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        try (DAO dao = DAOFactory.create(data, leveled())) {
+            dao.upsert(key, randomValue());
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(randomKey(), randomValue());
+            }
+            dao.remove(key);
+            dao.compact();
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+        try (DAO dao = DAOFactory.create(data, leveled())) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    private static int levelFiles(final File data) {
+        final String[] names = data.list((dir, name) -> name.endsWith(".level"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static Config leveled() {
+        return smallMemTable()
+                .compactionStrategy(new LeveledCompactionStrategy(2, 64 * 1024, 256 * 1024, 4))
+                .build();
+    }
+}
@@ -0,0 +1,123 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the manifest of SSTables which replaces walking the directory on open.
+ */
+class ManifestTest extends TestBase {
+    private static final int COUNT = 2000;
+    private static final String MANIFEST = "MANIFEST";
+
+    @Test
+    void reopen(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data);
+        for (int i = 0; i < 3; i++) {
+            try (DAO dao = DAOFactory.create(data, config())) {
+                assertContains(dao, expected);
+                dao.remove(key(i));
+                expected.remove(key(i));
+                dao.compact();
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void tornTail(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data);
+        try (RandomAccessFile file = new RandomAccessFile(new File(data, MANIFEST), "rw")) {
+            file.seek(file.length());
+            file.writeInt(1024);
+            file.writeInt(42);
+            file.write(new byte[100]);
+        }
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void corrupted(@TempDir File data) throws IOException {
+        fill(data);
+        // Closed manifest holds a single edit of every table, which can't be torn
+        try (RandomAccessFile file = new RandomAccessFile(new File(data, MANIFEST), "rw")) {
+            final long offset = Long.BYTES + Integer.BYTES * 3;
+            file.seek(offset);
+            final int generation = file.readInt();
+            file.seek(offset);
+            file.writeInt(~generation);
+        }
+        assertThrows(IOException.class, () -> DAOFactory.create(data, config()).close());
+    }
+
+    @Test
+    void orphans(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data);
+        final int filters = data.list((dir, name) -> name.endsWith(".bloom")).length;
+        final File[] orphans = {
+                new File(data, "100500_SSTable.dat"),
+                new File(data, "100500_SSTable.bloom"),
+                new File(data, "100501_SSTable.level"),
+                new File(data, "100502_SSTable.bloom.tmp")
+        };
+        for (final File orphan : orphans) {
+            assertTrue(orphan.createNewFile());
+        }
+        try (DAO dao = DAOFactory.create(data, config())) {
+            for (final File orphan : orphans) {
+                assertFalse(orphan.exists());
+            }
+            assertEquals(filters, data.list((dir, name) -> name.endsWith(".bloom")).length);
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void withoutManifest(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data);
+        assertTrue(new File(data, MANIFEST).delete());
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertContains(dao, expected);
+        }
+        assertTrue(new File(data, MANIFEST).exists());
+        try (DAO dao = DAOFactory.create(data, config())) {
+            assertContains(dao, expected);
+        }
+    }
+
+    private static Config config() {
+        return smallMemTable().build();
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> fill(final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config())) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer value = randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+            dao.removeRange(key(COUNT / 2), key(COUNT / 2 + 100));
+            expected.subMap(key(COUNT / 2), key(COUNT / 2 + 100)).clear();
+        }
+        return expected;
+    }
+}
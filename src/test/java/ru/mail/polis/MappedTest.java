@@ -0,0 +1,73 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks reads of SSTables mapped into memory.
+ */
+class MappedTest extends TestBase {
+    @Test
+    void reopenAndScan(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, mapped())) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, mapped())) {
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                final Record record = records.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    void compact(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final ByteBuffer removed = randomKey();
+        try (DAO dao = DAOFactory.create(data, mapped())) {
+            dao.upsert(key, randomValue());
+            dao.upsert(removed, randomValue());
+        }
+        try (DAO dao = DAOFactory.create(data, mapped())) {
+            dao.upsert(key, value);
+            dao.remove(removed);
+        }
+
+        try (DAO dao = DAOFactory.create(data, mapped())) {
+            dao.compact();
+            assertEquals(value, dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+    }
+
+    private static Config mapped() {
+        return Config.builder(DAOFactory.MAX_HEAP / 60)
+                .mapped(true)
+                .build();
+    }
+}
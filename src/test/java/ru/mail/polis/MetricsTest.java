@@ -0,0 +1,79 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks stats of the DAO and their exposure by JMX.
+ */
+class MetricsTest extends TestBase {
+    private static final int COUNT = 1000;
+
+    @Test
+    void stats(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, randomValue());
+                keys.add(key);
+            }
+            dao.compact();
+            for (final ByteBuffer key : keys) {
+                dao.get(key);
+            }
+            dao.remove(keys.get(0));
+
+            final Map<String, Number> stats = dao.stats();
+            assertEquals(COUNT, stats.get("upsert.count").longValue());
+            assertEquals(COUNT, stats.get("get.count").longValue());
+            assertEquals(1, stats.get("remove.count").longValue());
+            assertTrue(stats.get("get.p99.us").doubleValue() > 0);
+            assertTrue(stats.get("get.tables.mean").doubleValue() >= 1);
+            assertTrue(stats.get("flush.count").longValue() > 0);
+            assertTrue(stats.get("compaction.count").longValue() > 0);
+            assertTrue(stats.get("sstable.count").intValue() >= 1);
+            assertTrue(stats.get("sstable.bytes").longValue() > 0);
+            assertTrue(stats.get("write.amplification").doubleValue() > 1);
+        }
+    }
+
+    @Test
+    void jmx(@TempDir File data) throws IOException, JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName("ru.mail.polis:type=DAO,*");
+        final int registered = server.queryNames(pattern, null).size();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(randomKey(), randomValue());
+
+            final Set<ObjectName> names = server.queryNames(pattern, null);
+            assertEquals(registered + 1, names.size());
+            long upserts = 0;
+            for (final ObjectName name : names) {
+                upserts += ((Number) server.getAttribute(name, "upsert.count")).longValue();
+                // Stats are read-only and expose no operations
+                assertThrows(ReflectionException.class, () -> server.invoke(name, "compact", null, null));
+            }
+            assertTrue(upserts >= 1);
+        }
+        assertEquals(registered, server.queryNames(pattern, null).size());
+    }
+}
@@ -0,0 +1,94 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.FullCompactionStrategy;
+import ru.mail.polis.murzin.LeveledCompactionStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks compactions split into key ranges merged in parallel.
+ */
+class ParallelCompactionTest extends TestBase {
+    private static final int COUNT = 8000;
+    private static final int VALUE_SIZE = 1024;
+
+    @Test
+    void full(@TempDir File data) throws IOException {
+        final Config config = Config.builder(1024 * 1024)
+                .compactionStrategy(new FullCompactionStrategy(8))
+                .compactionThreads(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            fill(dao, expected);
+            dao.compact();
+            // Every range is written to its own table, at most half of tolerated tables
+            final int tables = dao.stats().get("sstable.count").intValue();
+            assertTrue(tables > 1 && tables <= 4, "Tables: " + tables);
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void removals(@TempDir File data) throws IOException {
+        final Config config = Config.builder(1024 * 1024)
+                .compactionThreads(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            fill(dao, expected);
+            for (int i = 0; i < COUNT; i += 3) {
+                dao.remove(key(i));
+                expected.remove(key(i));
+            }
+            dao.removeRange(key(COUNT / 4), key(COUNT / 2));
+            expected.subMap(key(COUNT / 4), key(COUNT / 2)).clear();
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void leveled(@TempDir File data) throws IOException {
+        final Config config = Config.builder(1024 * 1024)
+                .compactionStrategy(new LeveledCompactionStrategy(2, 512 * 1024, 4 * 1024 * 1024, 10))
+                .compactionThreads(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            fill(dao, expected);
+            fill(dao, expected);
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertContains(dao, expected);
+        }
+    }
+
+    private static void fill(
+            final DAO dao,
+            final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        for (int i = 0; i < COUNT; i++) {
+            final ByteBuffer value = randomBuffer(VALUE_SIZE);
+            dao.upsert(key(i), value);
+            expected.put(key(i), value);
+        }
+    }
+}
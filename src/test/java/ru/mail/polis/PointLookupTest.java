@@ -0,0 +1,94 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.SizeTieredCompactionStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks point lookups over many overlapping tables.
+ */
+class PointLookupTest extends TestBase {
+    @Test
+    void overwrites(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomKey());
+        }
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            for (int round = 0; round < 30; round++) {
+                for (final ByteBuffer key : keys) {
+                    if (round % 7 == 3 && key.hashCode() % 3 == 0) {
+                        dao.remove(key);
+                        expected.remove(key);
+                    } else if ((key.hashCode() + round) % 4 == 0) {
+                        final ByteBuffer value = randomValue();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                }
+                // Fill a table with other keys to make more tables
+                for (int i = 0; i < 300; i++) {
+                    dao.upsert(randomKey(), randomValue());
+                }
+                assertLookups(dao, keys, expected);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            assertLookups(dao, keys, expected);
+            dao.compact();
+            assertLookups(dao, keys, expected);
+        }
+    }
+
+    @Test
+    void emptyKey(@TempDir File data) throws IOException {
+        final ByteBuffer key = ByteBuffer.allocate(0);
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+            dao.upsert(randomKey(), randomValue());
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            dao.remove(key);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    private static void assertLookups(
+            final DAO dao,
+            final List<ByteBuffer> keys,
+            final Map<ByteBuffer, ByteBuffer> expected) throws IOException {
+        for (final ByteBuffer key : keys) {
+            final ByteBuffer value = expected.get(key);
+            if (value == null) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            } else {
+                assertEquals(value, dao.get(key));
+            }
+        }
+    }
+
+    private static Config sizeTiered() {
+        return smallMemTable()
+                .compactionStrategy(new SizeTieredCompactionStrategy(4, 32, 1.5, 256 * 1024))
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks SSTables with keys sharing long prefixes.
+ */
+class PrefixCompressionTest extends TestBase {
+    private static final int COUNT = 5000;
+
+    @Test
+    void sharedPrefixes(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data, config(false));
+        assertTrue(Files.directorySize(data) < rawSize(expected) * 2 / 3);
+
+        try (DAO dao = DAOFactory.create(data, config(true))) {
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, config(false))) {
+            dao.compact();
+            assertContains(dao, expected);
+        }
+    }
+
+    @Test
+    void seek(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data, config(false));
+        try (DAO dao = DAOFactory.create(data, config(false))) {
+            for (int i = 0; i < COUNT; i += 37) {
+                // Keys between the stored ones
+                final ByteBuffer from = key(i + "!");
+                final Iterator<Record> records = dao.iterator(from);
+                final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries =
+                        expected.tailMap(from).entrySet().iterator();
+                for (int j = 0; j < 20 && entries.hasNext(); j++) {
+                    final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+                    final Record record = records.next();
+                    assertEquals(entry.getKey(), record.getKey());
+                    assertEquals(entry.getValue(), record.getValue());
+                }
+                assertEquals(entries.hasNext(), records.hasNext());
+                assertThrows(NoSuchElementException.class, () -> dao.get(from));
+            }
+        }
+    }
+
+    @Test
+    void removals(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data, config(false));
+        try (DAO dao = DAOFactory.create(data, config(false))) {
+            for (int i = 0; i < COUNT; i += 3) {
+                final ByteBuffer key = key(Integer.toString(i));
+                dao.remove(key);
+                expected.remove(key);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config(false))) {
+            assertContains(dao, expected);
+        }
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> fill(
+            final File data,
+            final Config config) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer key = key(Integer.toString(i));
+                final ByteBuffer value = ByteBuffer.wrap(Integer.toString(i * 31).getBytes(StandardCharsets.UTF_8));
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        return expected;
+    }
+
+    private static ByteBuffer key(final String suffix) {
+        final String key = "tenant-0042:region-eu-central:entity-customer-account:" + suffix;
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long rawSize(final Map<ByteBuffer, ByteBuffer> entries) {
+        long size = 0;
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : entries.entrySet()) {
+            size += entry.getKey().remaining() + entry.getValue().remaining();
+        }
+        return size;
+    }
+
+    private static Config config(final boolean mapped) {
+        return Config.builder(DAOFactory.MAX_HEAP / 60)
+                .mapped(mapped)
+                .build();
+    }
+}
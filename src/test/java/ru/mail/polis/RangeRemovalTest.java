@@ -0,0 +1,131 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks removal of key ranges.
+ */
+class RangeRemovalTest extends TestBase {
+    private static final int COUNT = 3000;
+
+    @Test
+    void removeRange(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer value = randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+            dao.removeRange(key(500), key(1500));
+            expected.subMap(key(500), key(1500)).clear();
+            dao.removeRange(key(2500), null);
+            expected.tailMap(key(2500)).clear();
+            assertRemoved(dao, expected);
+
+            // Later writes are not shadowed
+            final ByteBuffer value = randomValue();
+            dao.upsert(key(1000), value);
+            expected.put(key(1000), value);
+            assertRemoved(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertRemoved(dao, expected);
+            dao.compact();
+            assertRemoved(dao, expected);
+        }
+    }
+
+    @Test
+    void replay(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int i = 0; i < 100; i++) {
+                final ByteBuffer value = randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+            dao.compact();
+            dao.removeRange(key(10), key(90));
+            expected.subMap(key(10), key(90)).clear();
+            assertRemoved(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertRemoved(dao, expected);
+        }
+    }
+
+    @Test
+    void compactionDropsShadowedCells(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(key(i), randomValue());
+            }
+            dao.compact();
+            final long size = Files.directorySize(data);
+
+            dao.removeRange(key(0), key(COUNT - 10));
+            dao.compact();
+            assertTrue(Files.directorySize(data) < size / 10);
+            assertEquals(10, count(dao.iterator(ByteBuffer.allocate(0))));
+        }
+    }
+
+    @Test
+    void snapshotIsolation(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            final ByteBuffer value = randomValue();
+            dao.upsert(key(1), value);
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.removeRange(key(0), null);
+                assertThrows(NoSuchElementException.class, () -> dao.get(key(1)));
+                assertEquals(value, snapshot.get(key(1)));
+                assertEquals(1, count(snapshot.iterator(key(0))));
+            }
+        }
+    }
+
+    private static void assertRemoved(
+            final DAO dao,
+            final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        assertContains(dao, expected);
+        assertRecords(expected.descendingMap(), dao.range(ByteBuffer.allocate(0), null, true));
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < COUNT; i += 7) {
+            final ByteBuffer key = key(i);
+            keys.add(key);
+            if (!expected.containsKey(key)) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+        }
+        final Map<ByteBuffer, ByteBuffer> values = dao.getAll(keys);
+        for (final ByteBuffer key : keys) {
+            assertEquals(expected.get(key), values.get(key));
+        }
+    }
+
+    private static int count(final Iterator<Record> records) {
+        int result = 0;
+        while (records.hasNext()) {
+            records.next();
+            result++;
+        }
+        return result;
+    }
+}
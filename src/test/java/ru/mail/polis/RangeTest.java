@@ -0,0 +1,100 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks bounded iteration in both directions.
+ */
+class RangeTest extends TestBase {
+    private static final int COUNT = 3000;
+
+    @Test
+    void ranges(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < COUNT; i++) {
+                final ByteBuffer value = randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+            // Overwrites and removals shadow cells of older tables
+            for (int i = 0; i < COUNT; i += 3) {
+                final ByteBuffer value = randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+                dao.remove(key(i + 1));
+                expected.remove(key(i + 1));
+            }
+            assertRanges(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertRanges(dao, expected);
+            dao.compact();
+            assertRanges(dao, expected);
+        }
+    }
+
+    @Test
+    void latest(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(key(i), randomValue());
+            }
+            final Iterator<Record> records = dao.range(key(0), key(2000), true);
+            for (int i = 1999; i > 1990; i--) {
+                assertEquals(key(i), records.next().getKey());
+            }
+        }
+    }
+
+    @Test
+    void emptyRanges(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key(1), randomValue());
+            assertFalse(dao.range(key(1), key(1), true).hasNext());
+            assertFalse(dao.range(key(2), key(1), false).hasNext());
+            assertFalse(dao.range(key(2), null, true).hasNext());
+        }
+    }
+
+    private static void assertRanges(
+            final DAO dao,
+            final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 20; i++) {
+            final int from = random.nextInt(COUNT);
+            final int to = from + random.nextInt(COUNT / 10);
+            final boolean bounded = random.nextBoolean();
+            final NavigableMap<ByteBuffer, ByteBuffer> range = bounded
+                    ? expected.subMap(key(from), true, key(to), false)
+                    : expected.tailMap(key(from), true);
+            final ByteBuffer bound = bounded ? key(to) : null;
+            assertRange(range, dao.range(key(from), bound, false));
+            assertRange(range.descendingMap(), dao.range(key(from), bound, true));
+        }
+    }
+
+    private static void assertRange(
+            final Map<ByteBuffer, ByteBuffer> expected,
+            final Iterator<Record> records) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+    }
+}
@@ -0,0 +1,83 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.SizeTieredCompactionStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks contents of the DAO which merges tables of similar size.
+ */
+class SizeTieredCompactionTest extends TestBase {
+    @Test
+    void manyFlushes(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            for (int i = 0; i < 3000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        // 3 MB of values flushed by 64 KB are merged into a few tiers
+        assertTrue(tableFiles(data) < 20);
+
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+                final Record record = records.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    void removeOlderTier(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            dao.upsert(key, randomValue());
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(randomKey(), randomValue());
+            }
+            dao.remove(key);
+            for (int i = 0; i < 1000; i++) {
+                dao.upsert(randomKey(), randomValue());
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, sizeTiered())) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            dao.compact();
+            assertEquals(1, tableFiles(data));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    private static int tableFiles(final File data) {
+        final String[] names = data.list((dir, name) -> name.endsWith("_SSTable.dat"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static Config sizeTiered() {
+        return smallMemTable()
+                .compactionStrategy(new SizeTieredCompactionStrategy(4, 32, 1.5, 256 * 1024))
+                .build();
+    }
+}
@@ -0,0 +1,152 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks consistent views of the DAO.
+ */
+class SnapshotTest extends TestBase {
+    @Test
+    void isolation(@TempDir File data) throws IOException {
+        final ByteBuffer updated = randomKey();
+        final ByteBuffer removed = randomKey();
+        final ByteBuffer added = randomKey();
+        final ByteBuffer oldValue = randomValue();
+        final ByteBuffer newValue = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(updated, oldValue);
+            dao.upsert(removed, oldValue);
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.upsert(updated, newValue);
+                dao.upsert(updated, newValue);
+                dao.remove(removed);
+                dao.upsert(added, newValue);
+
+                assertEquals(oldValue, snapshot.get(updated));
+                assertEquals(oldValue, snapshot.get(removed));
+                assertThrows(NoSuchElementException.class, () -> snapshot.get(added));
+                final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+                expected.put(updated, oldValue);
+                expected.put(removed, oldValue);
+                assertContains(snapshot, expected);
+
+                assertEquals(newValue, dao.get(updated));
+                assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+                assertEquals(newValue, dao.get(added));
+            }
+        }
+    }
+
+    @Test
+    void survivesCompaction(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            for (int i = 0; i < 500; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            try (Snapshot snapshot = dao.snapshot()) {
+                final Iterator<Record> scan = snapshot.iterator(ByteBuffer.allocate(0));
+                for (final ByteBuffer key : expected.keySet()) {
+                    dao.upsert(key, randomValue());
+                }
+                for (int i = 0; i < 500; i++) {
+                    dao.upsert(randomKey(), randomValue());
+                }
+                dao.compact();
+
+                // The scan started before compaction goes on over compacted tables
+                for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                    final Record record = scan.next();
+                    assertEquals(entry.getKey(), record.getKey());
+                    assertEquals(entry.getValue(), record.getValue());
+                }
+                assertFalse(scan.hasNext());
+                assertContains(snapshot, expected);
+            }
+        }
+    }
+
+    @Test
+    void batchesAreAtomic(@TempDir File data) throws Exception {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomKey());
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (DAO dao = DAOFactory.create(data, smallMemTable().build())) {
+            final Future<?> writes = writer.submit(() -> {
+                for (int i = 0; !done.get(); i++) {
+                    final WriteBatch batch = new WriteBatch();
+                    final ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).putInt(0, i);
+                    for (final ByteBuffer key : keys) {
+                        batch.upsert(key, value);
+                    }
+                    dao.apply(batch);
+                }
+                return null;
+            });
+            for (int i = 0; i < 200; i++) {
+                try (Snapshot snapshot = dao.snapshot()) {
+                    ByteBuffer first = null;
+                    for (final ByteBuffer key : keys) {
+                        final ByteBuffer value;
+                        try {
+                            value = snapshot.get(key);
+                        } catch (NoSuchElementException e) {
+                            // The first batch is not applied yet
+                            assertNull(first);
+                            continue;
+                        }
+                        if (first == null) {
+                            first = value;
+                        }
+                        assertEquals(first, value);
+                    }
+                }
+            }
+            done.set(true);
+            writes.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    void closed(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValue());
+            final Snapshot snapshot = dao.snapshot();
+            snapshot.close();
+            assertThrows(IOException.class, () -> snapshot.get(key));
+            assertThrows(IOException.class, () -> snapshot.iterator(key));
+        }
+    }
+}
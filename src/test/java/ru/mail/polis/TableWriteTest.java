@@ -0,0 +1,62 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+
+/**
+ * Checks SSTables written through the buffer of the writer.
+ */
+class TableWriteTest extends TestBase {
+    // Larger than the buffer of the writer
+    private static final int LARGE_VALUE = 3 * 1024 * 1024;
+
+    @Test
+    void manyBuffers(@TempDir File data) throws IOException {
+        // Tables span several fills of the buffer
+        check(data, Config.builder(8 * 1024 * 1024).build(), 20000, 0);
+    }
+
+    @Test
+    void largeValues(@TempDir File data) throws IOException {
+        check(data, Config.builder(8 * 1024 * 1024).build(), 3000, 7);
+    }
+
+    @Test
+    void withoutSync(@TempDir File data) throws IOException {
+        check(data, Config.builder(256 * 1024).syncTables(false).build(), 3000, 1000);
+    }
+
+    private static void check(
+            final File data,
+            final Config config,
+            final int count,
+            final int largeEvery) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < count; i++) {
+                // Large values go between small ones, so they are written next to staged blocks
+                final ByteBuffer value = largeEvery > 0 && i % 1000 == largeEvery
+                        ? randomBuffer(LARGE_VALUE)
+                        : randomValue();
+                dao.upsert(key(i), value);
+                expected.put(key(i), value);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertContains(dao, expected);
+            dao.compact();
+            assertContains(dao, expected);
+        }
+        try (DAO dao = DAOFactory.create(data, config)) {
+            assertContains(dao, expected);
+        }
+    }
+}
@@ -18,9 +18,19 @@ package ru.mail.polis;
 
 import org.jetbrains.annotations.NotNull;
 
+import ru.mail.polis.murzin.Config;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
 /**
  * Contains utility methods for unit tests.
  *
@@ -28,6 +38,7 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 abstract class TestBase {
     static final int KEY_LENGTH = 16;
+    static final long SMALL_MEMTABLE = 64 * 1024;
     private static final int VALUE_LENGTH = 1024;
 
     @NotNull
@@ -48,6 +59,14 @@ abstract class TestBase {
         return randomBuffer(VALUE_LENGTH);
     }
 
+    /**
+     * Key of the number, keys are in the order of their numbers up to 99999.
+     */
+    @NotNull
+    static ByteBuffer key(final int i) {
+        return ByteBuffer.wrap(String.format("key%05d", i).getBytes(StandardCharsets.UTF_8));
+    }
+
     @NotNull
     static ByteBuffer join(
             @NotNull final ByteBuffer left,
@@ -58,4 +77,52 @@ abstract class TestBase {
         result.rewind();
         return result;
     }
+
+    /**
+     * Configuration with a MemTable small enough to be flushed many times by a test.
+     */
+    @NotNull
+    static Config.Builder smallMemTable() {
+        return Config.builder(SMALL_MEMTABLE);
+    }
+
+    /**
+     * Check that the storage holds exactly the expected records, both by iteration and by point reads.
+     */
+    static void assertContains(
+            @NotNull final DAO dao,
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> sorted = new TreeMap<>(expected);
+        assertRecords(sorted, dao.iterator(ByteBuffer.allocate(0)));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : sorted.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Check that the snapshot holds exactly the expected records, both by iteration and by point reads.
+     */
+    static void assertContains(
+            @NotNull final Snapshot snapshot,
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> sorted = new TreeMap<>(expected);
+        assertRecords(sorted, snapshot.iterator(ByteBuffer.allocate(0)));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : sorted.entrySet()) {
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Check that the iterator returns exactly the expected records in the order of the map.
+     */
+    static void assertRecords(
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected,
+            @NotNull final Iterator<Record> records) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+    }
 }
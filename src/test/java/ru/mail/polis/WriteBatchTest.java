@@ -0,0 +1,122 @@
+package ru.mail.polis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ru.mail.polis.murzin.Config;
+import ru.mail.polis.murzin.Durability;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks batches of upserts and removals.
+ */
+class WriteBatchTest extends TestBase {
+    @Test
+    void applyInOrder(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer removed = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(removed, randomValue());
+            dao.apply(new WriteBatch()
+                    .upsert(key, randomValue())
+                    .remove(removed)
+                    .upsert(key, value));
+            assertEquals(value, dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+    }
+
+    @Test
+    void manyBatches(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, Config.builder(256 * 1024).build())) {
+            for (int i = 0; i < 20; i++) {
+                final WriteBatch batch = new WriteBatch();
+                for (int j = 0; j < 500; j++) {
+                    final ByteBuffer key = randomKey();
+                    final ByteBuffer value = randomValue();
+                    batch.upsert(key, value);
+                    expected.put(key, value);
+                }
+                dao.apply(batch);
+            }
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void recoverWithoutClose(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        final WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 500; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            batch.upsert(key, value);
+            expected.put(key, value);
+        }
+
+        final DAO crashed = DAOFactory.create(data, durable());
+        crashed.apply(batch);
+
+        try (DAO dao = DAOFactory.create(data)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void tornBatchIsLostWhole(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.upsert(randomKey(), randomValue());
+        }
+
+        final DAO crashed = DAOFactory.create(data, durable());
+        crashed.upsert(key, value);
+        crashed.apply(batch);
+
+        // Cut the batch in the middle
+        final File[] logs = data.listFiles((dir, name) -> name.endsWith("_CommitLog.log"));
+        assertTrue(logs != null && logs.length == 1);
+        try (FileChannel ch = FileChannel.open(logs[0].toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 100);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+            for (final WriteBatch.Mutation mutation : batch.mutations()) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(mutation.getKey()));
+            }
+        }
+    }
+
+    private static Config durable() {
+        return Config.builder(DAOFactory.MAX_HEAP / 60)
+                .durability(Durability.BATCH)
+                .build();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link ZipfianGenerator}.
+ */
+class ZipfianGeneratorTest {
+    private static final int ITEMS = 1000;
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    void skewed() {
+        final ZipfianGenerator generator = new ZipfianGenerator(ITEMS);
+        final int[] counts = new int[ITEMS];
+        for (int i = 0; i < SAMPLES; i++) {
+            final long item = generator.next(ITEMS);
+            assertTrue(0 <= item && item < ITEMS);
+            counts[(int) item]++;
+        }
+        // The first item alone is more popular than the whole second half
+        int tail = 0;
+        for (int i = ITEMS / 2; i < ITEMS; i++) {
+            tail += counts[i];
+        }
+        assertTrue(counts[0] > tail);
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10]);
+    }
+
+    @Test
+    void scrambled() {
+        final ZipfianGenerator generator = new ZipfianGenerator(ITEMS);
+        for (int i = 0; i < SAMPLES; i++) {
+            final long item = generator.nextScrambled(ITEMS);
+            assertTrue(0 <= item && item < ITEMS);
+        }
+    }
+
+    @Test
+    void growing() {
+        final ZipfianGenerator generator = new ZipfianGenerator(ITEMS);
+        final int items = ITEMS * 10;
+        final int[] counts = new int[items];
+        for (int i = 0; i < SAMPLES; i++) {
+            final long item = generator.next(items);
+            assertTrue(0 <= item && item < items);
+            counts[(int) item]++;
+        }
+        // Items added after the generator is created are drawn too
+        int added = 0;
+        for (int i = ITEMS; i < items; i++) {
+            added += counts[i];
+        }
+        assertTrue(added > 0);
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10]);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.mail.polis.murzin;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the LRU cache of SSTable blocks.
+ */
+class BlockCacheTest {
+    private static final long CAPACITY = 1024 * 1024;
+    private static final int BLOCK_SIZE = 4 * 1024;
+
+    @Test
+    void hitsAndMisses() {
+        final BlockCache cache = new BlockCache(CAPACITY);
+        assertNull(cache.get(1, 0));
+        assertEquals(1, cache.misses());
+
+        final ByteBuffer block = block(BLOCK_SIZE);
+        cache.put(1, 0, block);
+        assertEquals(block, cache.get(1, 0));
+        assertNull(cache.get(1, BLOCK_SIZE));
+        assertNull(cache.get(2, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(BLOCK_SIZE, cache.size());
+    }
+
+    @Test
+    void budget() {
+        final BlockCache cache = new BlockCache(CAPACITY);
+        final int count = (int) (CAPACITY / BLOCK_SIZE) * 4;
+        for (int i = 0; i < count; i++) {
+            cache.put(1, (long) i * BLOCK_SIZE, block(BLOCK_SIZE));
+            assertTrue(cache.size() <= CAPACITY);
+        }
+        assertTrue(cache.evictions() >= count - CAPACITY / BLOCK_SIZE);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        final BlockCache cache = new BlockCache(CAPACITY);
+        final ByteBuffer hot = block(BLOCK_SIZE);
+        cache.put(1, 0, hot);
+        final int count = (int) (CAPACITY / BLOCK_SIZE) * 4;
+        for (int i = 1; i <= count; i++) {
+            cache.put(2, (long) i * BLOCK_SIZE, block(BLOCK_SIZE));
+            assertNotNull(cache.get(1, 0));
+        }
+        assertEquals(hot, cache.get(1, 0));
+        // The first blocks of the second table are evicted long ago
+        int evicted = 0;
+        for (int i = 1; i <= count / 4; i++) {
+            if (cache.get(2, (long) i * BLOCK_SIZE) == null) {
+                evicted++;
+            }
+        }
+        assertTrue(evicted > 0);
+    }
+
+    @Test
+    void oversizedBlock() {
+        final BlockCache cache = new BlockCache(CAPACITY);
+        final ByteBuffer block = block((int) CAPACITY);
+        assertSame(block, cache.put(1, 0, block));
+        assertNull(cache.get(1, 0));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    void invalidate() {
+        final BlockCache cache = new BlockCache(CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            cache.put(1, (long) i * BLOCK_SIZE, block(BLOCK_SIZE));
+            cache.put(2, (long) i * BLOCK_SIZE, block(BLOCK_SIZE));
+        }
+        cache.invalidate(1);
+        assertEquals(10L * BLOCK_SIZE, cache.size());
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get(1, (long) i * BLOCK_SIZE));
+            assertNotNull(cache.get(2, (long) i * BLOCK_SIZE));
+        }
+    }
+
+    @Test
+    void directMemoryLimit() {
+        assertEquals(512, BlockCache.parseSize("512"));
+        assertEquals(64L << 10, BlockCache.parseSize("64k"));
+        assertEquals(128L << 20, BlockCache.parseSize("128M"));
+        assertEquals(2L << 30, BlockCache.parseSize("2g"));
+        assertTrue(BlockCache.maxCapacity() > 0);
+        assertTrue(Config.builder(1024).build().getCacheSize() <= BlockCache.maxCapacity());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Config.builder(1024).cacheSize(BlockCache.maxCapacity() + 1));
+    }
+
+    private static ByteBuffer block(final int size) {
+        final byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mail.polis.murzin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that live tables of the manifest are changed only by edits which are written.
+ */
+class ManifestEditTest {
+    @Test
+    void failedEdit(@TempDir File data) throws IOException {
+        final List<FileTable> tables = Arrays.asList(table(data, 1), table(data, 2));
+        try (Manifest manifest = Manifest.create(data, 2, tables, true)) {
+            // Channels are closed by an interrupt, so the append is failed
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(IOException.class, () -> manifest.edit(tables, Collections.singletonList(table(data, 3))));
+            } finally {
+                Thread.interrupted();
+            }
+            assertEquals(Arrays.asList(1, 2), generations(manifest));
+            assertEquals(2, manifest.generation());
+
+            manifest.edit(Collections.singletonList(tables.get(0)), Collections.singletonList(table(data, 4)));
+            assertEquals(Arrays.asList(2, 4), generations(manifest));
+        }
+        try (Manifest manifest = Manifest.open(data, generation -> file(data, generation), false, null, true)) {
+            assertEquals(Arrays.asList(2, 4), generations(manifest));
+            assertEquals(4, manifest.generation());
+        }
+    }
+
+    private static List<Integer> generations(final Manifest manifest) {
+        final List<Integer> result = new ArrayList<>();
+        for (final FileTable table : manifest.tables()) {
+            result.add(table.generation());
+        }
+        return result;
+    }
+
+    private static FileTable table(
+            final File data,
+            final int generation) {
+        final ByteBuffer key = ByteBuffer.wrap(("key" + generation).getBytes(StandardCharsets.UTF_8));
+        return new FileTable(
+                file(data, generation),
+                generation,
+                0,
+                1024,
+                key,
+                key,
+                generation,
+                RangeTombstones.of(Collections.emptyList()),
+                false,
+                null);
+    }
+
+    private static File file(
+            final File data,
+            final int generation) {
+        return new File(data, generation + "_SSTable.dat");
+    }
+}
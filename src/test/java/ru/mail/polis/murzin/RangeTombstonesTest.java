@@ -0,0 +1,72 @@
+package ru.mail.polis.murzin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks fragments of overlapping range tombstones against the tombstones themselves.
+ */
+class RangeTombstonesTest {
+    private static final int KEYS = 100;
+    private static final int TOMBSTONES = 300;
+
+    @Test
+    void fragments() {
+        final Random random = new Random(42);
+        final MemTable memTable = new MemTable();
+        final List<RangeTombstone> tombstones = new ArrayList<>();
+        for (int i = 1; i <= TOMBSTONES; i++) {
+            final int from = random.nextInt(KEYS);
+            final int to = from + 1 + random.nextInt(KEYS / 4);
+            // Tombstones come in random order of timestamps, some of them unbounded
+            final RangeTombstone tombstone = new RangeTombstone(
+                    key(from),
+                    random.nextInt(50) == 0 ? null : key(to),
+                    1 + random.nextInt(TOMBSTONES * 10));
+            tombstones.add(tombstone);
+            memTable.removeRange(tombstone);
+
+            if (i % 50 == 0) {
+                assertFragments(tombstones, memTable, Long.MAX_VALUE);
+                assertFragments(tombstones, memTable, TOMBSTONES * 5);
+            }
+        }
+    }
+
+    private static void assertFragments(
+            final List<RangeTombstone> tombstones,
+            final MemTable memTable,
+            final long timeStamp) {
+        final List<RangeTombstone> visible = new ArrayList<>();
+        for (final RangeTombstone tombstone : tombstones) {
+            if (tombstone.timeStamp() <= timeStamp) {
+                visible.add(tombstone);
+            }
+        }
+        final RangeTombstones fragments = RangeTombstones.of(visible);
+        final RangeTombstones ofMemTable = memTable.rangeTombstones(timeStamp);
+        for (int i = 0; i < KEYS * 2; i++) {
+            final ByteBuffer key = key(i);
+            long expected = 0;
+            for (final RangeTombstone tombstone : visible) {
+                if (tombstone.contains(key)) {
+                    expected = Math.max(expected, tombstone.timeStamp());
+                }
+            }
+            assertEquals(expected, fragments.timeStampOf(key));
+            assertEquals(expected, ofMemTable.timeStampOf(key));
+            assertEquals(expected, memTable.rangeTimeStampOf(key, timeStamp));
+        }
+    }
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.wrap(String.format("key%05d", i).getBytes(StandardCharsets.UTF_8));
+    }
+}